@@ -1,137 +1,1970 @@
 import java.io.*;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.*;
+import java.util.concurrent.*;
 
 class Fixed {
   public static final String DIR_STR = "DLUR";
+  public static final String[] DIR_NAMES = new String[]{"D", "L", "U", "R"};
   public static final int[] DR = new int[]{1, 0, -1, 0};
   public static final int[] DC = new int[]{0, -1, 0, 1};
-  public static final int BOUNDS = 4;
-  public static final int DAYS_SLICE = 20;
-  public static final int WORKER_SLICE = 1;
+  public static final int DAYS = 2000;
+  public static final int MAX_WORKERS = 100;
+  public static final int BUCKET_SIZE = 5;
+  public static final int ENGINE_GREEDY = 0;
+  public static final int ENGINE_AUCTION = 1;
+  public static final int ENGINE_TERRITORY = 2;
+  public static final int ENGINE = ENGINE_TERRITORY;
+  public static final int PLAN_THREADS = 4;
+  public static final boolean FORECAST = true;
+  public static final int FORECAST_TRACKS = 256;
+  public static final boolean SEARCH = true;
+  public static final boolean LOOKAHEAD = true;
 }
 
-class SnowCleaning {
+// Parameters worth tuning per kind of test case. A set is written as
+// "name=value,..."; names left out keep their default. TUNED holds the set
+// for each bucket, and SnowCleaning.configure lays overrides on top of it.
+class SolverConfig {
+  public static final int BOUNDS = 0;
+  public static final int CANDIDATES = 1;
+  public static final int HIRE_RATE = 2;
+  public static final int HIRE_TAU = 3;
+  public static final int HIRE_DISCOUNT = 4;
+  public static final int ROLLOUT_DAYS = 5;
+  public static final int ROLLOUT_SAMPLES = 6;
+  public static final int ROLLOUT_HISTORY = 7;
+  public static final int SEARCH_PASSES = 8;
+  public static final int SEARCH_MILLIS = 9;
+  public static final int REGION_SPLITS = 10;
+  private static final String[] NAMES = new String[]{"bounds", "candidates",
+      "hireRate", "hireTau", "hireDiscount", "rolloutDays", "rolloutSamples",
+      "rolloutHistory", "searchPasses", "searchMillis", "regionSplits"};
+  private static final double[] DEFAULTS = new double[]{12, 8, 0.05, 0.5,
+      0.25, 8, 8, 20, 4, 50, 1};
+  private static final double[] MINIMA = new double[]{1, 1, 0, 0, 0, 1, 1, 1,
+      0, 0, 1};
+
+  // Boards of 20-34 or 35-50 cells a side, times fine / salary below 1,
+  // from 1 to 3, or above 3.
+  private static final String[] TUNED = new String[]{
+      "bounds=16,candidates=11,hireRate=0.064,hireTau=0.734,hireDiscount=0.294",
+      "",
+      "bounds=11,candidates=4,hireRate=0.050,hireTau=0.543,hireDiscount=0.162",
+      "bounds=20,candidates=10,hireRate=0.054,hireTau=0.758,hireDiscount=0.399",
+      "bounds=14,candidates=7,hireRate=0.056,hireTau=0.593,hireDiscount=0.206",
+      "bounds=19,candidates=11,hireRate=0.074,hireTau=0.469,hireDiscount=0.128"};
+
+  private double[] values_;
+
+  SolverConfig(String spec) {
+    values_ = DEFAULTS.clone();
+    set(spec);
+  }
+
+  public static int bucket(int boardSize, int salary, int snowFine) {
+    int ratio = snowFine < salary ? 0 : snowFine <= 3 * salary ? 1 : 2;
+    return (boardSize < 35 ? 0 : 3) + ratio;
+  }
+
+  public static SolverConfig forCase(int boardSize, int salary,
+      int snowFine) {
+    return new SolverConfig(TUNED[bucket(boardSize, salary, snowFine)]);
+  }
+
+  public void set(String spec) {
+    for (String pair : spec.split(",")) {
+      if (pair.isEmpty()) continue;
+      int eq = pair.indexOf('=');
+      int param = eq < 0 ? -1
+          : Arrays.asList(NAMES).indexOf(pair.substring(0, eq));
+      if (param == -1) {
+        throw new IllegalArgumentException("Unknown parameter " + pair);
+      }
+      double value = Double.parseDouble(pair.substring(eq + 1));
+      if (!(value >= MINIMA[param])) {
+        throw new IllegalArgumentException("Parameter out of range " + pair);
+      }
+      values_[param] = value;
+    }
+  }
+
+  public double value(int param) {
+    return values_[param];
+  }
+
+  public int intValue(int param) {
+    return (int) Math.round(values_[param]);
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < NAMES.length; ++i) {
+      if (i > 0) sb.append(',');
+      sb.append(NAMES[i]).append('=').append(values_[i]);
+    }
+    return sb.toString();
+  }
+}
+
+class SnowSet {
+  private int[] cells_;
+  private int[] index_;
+  private int size_;
+
+  SnowSet(int capacity) {
+    cells_ = new int[capacity];
+    index_ = new int[capacity];
+    for (int i = 0; i < capacity; ++i) {
+      index_[i] = -1;
+    }
+    size_ = 0;
+  }
+
+  public int size() {
+    return size_;
+  }
+
+  public int get(int i) {
+    return cells_[i];
+  }
+
+  public boolean contains(int cell) {
+    return index_[cell] != -1;
+  }
+
+  public void add(int cell) {
+    if (index_[cell] != -1) return;
+    index_[cell] = size_;
+    cells_[size_++] = cell;
+  }
+
+  // Swaps the last live cell into the hole, so iteration order is not kept.
+  public void remove(int cell) {
+    int i = index_[cell];
+    if (i == -1) return;
+    int last = cells_[--size_];
+    cells_[i] = last;
+    index_[last] = i;
+    index_[cell] = -1;
+  }
+}
+
+// One bit per cell, one long per row, so boards are at most 64 wide.
+class BitBoard {
+  private long[] rows_;
+  private int boardSize_;
+
+  BitBoard(int boardSize) {
+    boardSize_ = boardSize;
+    rows_ = new long[boardSize];
+  }
+
+  public boolean get(int row, int col) {
+    return (rows_[row] >>> col & 1L) != 0;
+  }
+
+  public void set(int row, int col) {
+    rows_[row] |= 1L << col;
+  }
+
+  public void clear(int row, int col) {
+    rows_[row] &= ~(1L << col);
+  }
+
+  public long row(int row) {
+    return rows_[row];
+  }
+
+  // Whether any bit is set within radius of (row, col) along both axes.
+  public boolean anyWithin(int row, int col, int radius) {
+    int lo = Math.max(0, col - radius);
+    int hi = Math.min(boardSize_ - 1, col + radius);
+    long mask = (-1L >>> (63 - hi)) & (-1L << lo);
+    for (int r = Math.max(0, row - radius);
+        r <= Math.min(boardSize_ - 1, row + radius); ++r) {
+      if ((rows_[r] & mask) != 0) return true;
+    }
+    return false;
+  }
+}
+
+// Which cells hold workers: an occupancy bitboard, plus the ids standing on
+// each cell as a linked list since several workers may share one.
+class WorkerMap {
+  private int boardSize_;
+  private BitBoard occupied_;
+  private int[] head_;
+  private int[] next_;
+  private int[] prev_;
+
+  WorkerMap(int boardSize, int maxWorkers) {
+    boardSize_ = boardSize;
+    occupied_ = new BitBoard(boardSize);
+    head_ = new int[boardSize * boardSize];
+    for (int i = 0; i < head_.length; ++i) {
+      head_[i] = -1;
+    }
+    next_ = new int[maxWorkers];
+    prev_ = new int[maxWorkers];
+  }
+
+  public BitBoard occupancy() {
+    return occupied_;
+  }
+
+  public boolean occupied(int row, int col) {
+    return occupied_.get(row, col);
+  }
+
+  // First worker on the cell, or -1; continue with next(id).
+  public int first(int row, int col) {
+    return head_[row * boardSize_ + col];
+  }
+
+  public int next(int id) {
+    return next_[id];
+  }
+
+  public void place(int id, int row, int col) {
+    int cell = row * boardSize_ + col;
+    prev_[id] = -1;
+    next_[id] = head_[cell];
+    if (head_[cell] != -1) prev_[head_[cell]] = id;
+    head_[cell] = id;
+    occupied_.set(row, col);
+  }
+
+  public void move(int id, int fromRow, int fromCol, int row, int col) {
+    int cell = fromRow * boardSize_ + fromCol;
+    if (prev_[id] != -1) {
+      next_[prev_[id]] = next_[id];
+    } else {
+      head_[cell] = next_[id];
+    }
+    if (next_[id] != -1) prev_[next_[id]] = prev_[id];
+    if (head_[cell] == -1) occupied_.clear(fromRow, fromCol);
+    place(id, row, col);
+  }
+}
+
+// Each cell's nearest worker (ties to the lower id), updated incrementally.
+class Territories {
+  private int boardSize_;
+  private int[] owner_;
+  private int[] row_;
+  private int[] col_;
+  private int[] size_;
+  private int workers_;
+
+  private int[] queue_;
+  private int[] seen_;
+  private int visit_;
+  private int[] best_;
+  private int[] bucketHead_;
+  private int[] entryCell_;
+  private int[] entryNext_;
+
+  Territories(int boardSize, int maxWorkers) {
+    boardSize_ = boardSize;
+    int cells = boardSize * boardSize;
+    owner_ = new int[cells];
+    for (int i = 0; i < cells; ++i) {
+      owner_[i] = -1;
+    }
+    row_ = new int[maxWorkers];
+    col_ = new int[maxWorkers];
+    size_ = new int[maxWorkers];
+    queue_ = new int[cells];
+    seen_ = new int[cells];
+    best_ = new int[cells];
+    bucketHead_ = new int[2 * boardSize];
+    entryCell_ = new int[5 * cells];
+    entryNext_ = new int[5 * cells];
+  }
+
+  // Nearest worker to the cell, or -1 before the first hire.
+  public int owner(int cell) {
+    return owner_[cell];
+  }
+
+  public void place(int id, int row, int col) {
+    row_[id] = row;
+    col_[id] = col;
+    workers_ = Math.max(workers_, id + 1);
+    claim(id);
+  }
+
+  public void move(int id, int row, int col) {
+    int start = row_[id] * boardSize_ + col_[id];
+    int count = 0;
+    visit_++;
+    if (owner_[start] == id) {
+      seen_[start] = visit_;
+      queue_[count++] = start;
+    }
+    for (int head = 0; head < count; ++head) {
+      int cell = queue_[head];
+      int r = cell / boardSize_;
+      int c = cell % boardSize_;
+      for (int dir = 0; dir < 4; ++dir) {
+        int nr = r + Fixed.DR[dir];
+        int nc = c + Fixed.DC[dir];
+        if (nr < 0 || nc < 0 || nr >= boardSize_ || nc >= boardSize_) continue;
+        int next = nr * boardSize_ + nc;
+        if (seen_[next] != visit_ && owner_[next] == id) {
+          seen_[next] = visit_;
+          queue_[count++] = next;
+        }
+      }
+    }
+    row_[id] = row;
+    col_[id] = col;
+    repair(id, count);
+    claim(id);
+    // A worker sharing the old cell with the lower-id mover owned nothing,
+    // so no neighbour could hand it back its cell.
+    for (int w = 0; w < workers_; ++w) {
+      if (size_[w] == 0) claim(w);
+    }
+  }
+
+  // Re-derives the owners of queue_[0..count), the cells marked with visit_,
+  // from the mover itself and from their neighbours outside that set.
+  private void repair(int id, int count) {
+    int entries = 0;
+    int lowest = bucketHead_.length;
+    for (int i = 0; i < count; ++i) {
+      int cell = queue_[i];
+      best_[cell] = id;
+      int r = cell / boardSize_;
+      int c = cell % boardSize_;
+      for (int dir = 0; dir < 4; ++dir) {
+        int nr = r + Fixed.DR[dir];
+        int nc = c + Fixed.DC[dir];
+        if (nr < 0 || nc < 0 || nr >= boardSize_ || nc >= boardSize_) continue;
+        int next = nr * boardSize_ + nc;
+        if (seen_[next] != visit_ && owner_[next] != -1
+            && closer(owner_[next], best_[cell], cell)) {
+          best_[cell] = owner_[next];
+        }
+      }
+      int d = distance(best_[cell], cell);
+      entryCell_[entries] = cell;
+      entryNext_[entries] = bucketHead_[d] - 1;
+      bucketHead_[d] = ++entries;
+      lowest = Math.min(lowest, d);
+    }
+    // Cells leave the marked set once final; a stale entry is one whose
+    // cell is final already or whose best owner got closer since.
+    for (int d = lowest; d < bucketHead_.length; ++d) {
+      while (bucketHead_[d] != 0) {
+        int e = bucketHead_[d] - 1;
+        bucketHead_[d] = entryNext_[e] + 1;
+        int cell = entryCell_[e];
+        if (seen_[cell] != visit_ || distance(best_[cell], cell) != d) {
+          continue;
+        }
+        seen_[cell] = 0;
+        setOwner(cell, best_[cell]);
+        int r = cell / boardSize_;
+        int c = cell % boardSize_;
+        for (int dir = 0; dir < 4; ++dir) {
+          int nr = r + Fixed.DR[dir];
+          int nc = c + Fixed.DC[dir];
+          if (nr < 0 || nc < 0 || nr >= boardSize_ || nc >= boardSize_) {
+            continue;
+          }
+          int next = nr * boardSize_ + nc;
+          if (seen_[next] == visit_
+              && closer(best_[cell], best_[next], next)) {
+            best_[next] = best_[cell];
+            int nd = distance(best_[next], next);
+            entryCell_[entries] = next;
+            entryNext_[entries] = bucketHead_[nd] - 1;
+            bucketHead_[nd] = ++entries;
+          }
+        }
+      }
+    }
+  }
+
+  // Takes every cell the worker is now the nearest to.
+  private void claim(int id) {
+    int start = row_[id] * boardSize_ + col_[id];
+    int count = 0;
+    visit_++;
+    seen_[start] = visit_;
+    queue_[count++] = start;
+    for (int head = 0; head < count; ++head) {
+      int cell = queue_[head];
+      if (owner_[cell] != id) {
+        if (owner_[cell] != -1 && !closer(id, owner_[cell], cell)) {
+          continue;
+        }
+        setOwner(cell, id);
+      }
+      int r = cell / boardSize_;
+      int c = cell % boardSize_;
+      for (int dir = 0; dir < 4; ++dir) {
+        int nr = r + Fixed.DR[dir];
+        int nc = c + Fixed.DC[dir];
+        if (nr < 0 || nc < 0 || nr >= boardSize_ || nc >= boardSize_) continue;
+        int next = nr * boardSize_ + nc;
+        if (seen_[next] != visit_) {
+          seen_[next] = visit_;
+          queue_[count++] = next;
+        }
+      }
+    }
+  }
+
+  // Whether worker a is nearer to the cell than worker b, the lower id
+  // winning a tie.
+  private boolean closer(int a, int b, int cell) {
+    int da = distance(a, cell);
+    int db = distance(b, cell);
+    return da < db || (da == db && a < b);
+  }
+
+  private int distance(int id, int cell) {
+    return Math.abs(row_[id] - cell / boardSize_)
+        + Math.abs(col_[id] - cell % boardSize_);
+  }
+
+  private void setOwner(int cell, int id) {
+    if (owner_[cell] != -1) size_[owner_[cell]]--;
+    owner_[cell] = id;
+    size_[id]++;
+  }
+}
+
+// Buckets idle workers on a coarse grid so nearest-worker queries only
+// visit the rings of buckets that can still beat the best distance found.
+class WorkerIndex {
+  private int bucketSize_;
+  private int buckets_;
+  private int[] head_;
+  private int[] next_;
+  private int[] prev_;
+  private int[] bucket_;
+  private int[] row_;
+  private int[] col_;
+
+  WorkerIndex(int boardSize, int bucketSize, int capacity) {
+    bucketSize_ = bucketSize;
+    buckets_ = (boardSize + bucketSize - 1) / bucketSize;
+    head_ = new int[buckets_ * buckets_];
+    for (int i = 0; i < head_.length; ++i) {
+      head_[i] = -1;
+    }
+    next_ = new int[capacity];
+    prev_ = new int[capacity];
+    bucket_ = new int[capacity];
+    row_ = new int[capacity];
+    col_ = new int[capacity];
+    for (int i = 0; i < capacity; ++i) {
+      bucket_[i] = -1;
+    }
+  }
+
+  public boolean contains(int id) {
+    return bucket_[id] != -1;
+  }
+
+  public void add(int id, int row, int col) {
+    if (bucket_[id] != -1) remove(id);
+    int b = (row / bucketSize_) * buckets_ + col / bucketSize_;
+    row_[id] = row;
+    col_[id] = col;
+    bucket_[id] = b;
+    prev_[id] = -1;
+    next_[id] = head_[b];
+    if (head_[b] != -1) prev_[head_[b]] = id;
+    head_[b] = id;
+  }
+
+  public void remove(int id) {
+    int b = bucket_[id];
+    if (b == -1) return;
+    if (prev_[id] != -1) {
+      next_[prev_[id]] = next_[id];
+    } else {
+      head_[b] = next_[id];
+    }
+    if (next_[id] != -1) prev_[next_[id]] = prev_[id];
+    bucket_[id] = -1;
+  }
+
+  // Writes every indexed worker within maxDistance (Manhattan) into out.
+  public int within(int row, int col, int maxDistance, int[] out) {
+    int count = 0;
+    int lo_r = Math.max(0, (row - maxDistance) / bucketSize_);
+    int hi_r = Math.min(buckets_ - 1, (row + maxDistance) / bucketSize_);
+    int lo_c = Math.max(0, (col - maxDistance) / bucketSize_);
+    int hi_c = Math.min(buckets_ - 1, (col + maxDistance) / bucketSize_);
+    for (int i = lo_r; i <= hi_r; ++i) {
+      for (int j = lo_c; j <= hi_c; ++j) {
+        for (int id = head_[i * buckets_ + j]; id != -1; id = next_[id]) {
+          if (Math.abs(row_[id] - row) + Math.abs(col_[id] - col) <= maxDistance) {
+            out[count++] = id;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  public int row(int id) {
+    return row_[id];
+  }
+
+  public int col(int id) {
+    return col_[id];
+  }
+
+  // Returns the closest indexed worker within maxDistance (Manhattan), or -1.
+  public int nearest(int row, int col, int maxDistance) {
+    int br = row / bucketSize_;
+    int bc = col / bucketSize_;
+    int best = -1;
+    int bestDistance = maxDistance + 1;
+    for (int k = 0; k < buckets_; ++k) {
+      int lower = (k == 0) ? 0 : (k - 1) * bucketSize_ + 1;
+      if (lower >= bestDistance) break;
+      for (int i = br - k; i <= br + k; ++i) {
+        if (i < 0 || i >= buckets_) continue;
+        int step = (i == br - k || i == br + k) ? 1 : 2 * k;
+        for (int j = bc - k; j <= bc + k; j += step) {
+          if (j < 0 || j >= buckets_) continue;
+          for (int id = head_[i * buckets_ + j]; id != -1; id = next_[id]) {
+            int distance = Math.abs(row_[id] - row) + Math.abs(col_[id] - col);
+            if (distance < bestDistance) {
+              bestDistance = distance;
+              best = id;
+            }
+          }
+        }
+      }
+    }
+    return best;
+  }
+}
+
+// Shortest-path distance and first step between cells of an open board. The
+// step is the first of D, L, U, R that leads along a shortest path.
+class RouteTable {
+  private int boardSize_;
+
+  RouteTable(int boardSize) {
+    boardSize_ = boardSize;
+  }
+
+  public int distance(int from, int to) {
+    return Math.abs(to / boardSize_ - from / boardSize_)
+        + Math.abs(to % boardSize_ - from % boardSize_);
+  }
+
+  // Direction index into Fixed.DR/DC of the first move, or -1 if from == to.
+  public int firstStep(int from, int to) {
+    int dr = to / boardSize_ - from / boardSize_;
+    int dc = to % boardSize_ - from % boardSize_;
+    return dr > 0 ? 0 : dc < 0 ? 1 : dr < 0 ? 2 : dc > 0 ? 3 : -1;
+  }
+}
+
+// Tracks snow clouds from day to day and predicts where they snow tomorrow.
+class SnowForecast {
+  private static final int JOIN = 2;
+  private static final double MATCH = 3.0;
+  private static final int MAX_MISSED = 3;
+  private static final int MAX_AGE = 25;
+
+  private int boardSize_;
+  private int day_;
+  private int[] mark_;
+  private int[] queue_;
+
+  private int tracks_;
+  private double[] row_;
+  private double[] col_;
+  private double[] dRow_;
+  private double[] dCol_;
+  private int[] radius_;
+  private int[] age_;
+  private int[] hits_;
+  private int[] missed_;
+  private int[] seen_;
+
+  SnowForecast(int boardSize, int maxTracks) {
+    boardSize_ = boardSize;
+    mark_ = new int[boardSize * boardSize];
+    queue_ = new int[boardSize * boardSize];
+    row_ = new double[maxTracks];
+    col_ = new double[maxTracks];
+    dRow_ = new double[maxTracks];
+    dCol_ = new double[maxTracks];
+    radius_ = new int[maxTracks];
+    age_ = new int[maxTracks];
+    hits_ = new int[maxTracks];
+    missed_ = new int[maxTracks];
+    seen_ = new int[maxTracks];
+  }
+
+  // Feeds one day of snowfall as (row, col) pairs.
+  public void observe(int[] snowFalls) {
+    day_++;
+    int n = snowFalls.length / 2;
+    for (int i = 0; i < n; ++i) {
+      mark_[snowFalls[2 * i] * boardSize_ + snowFalls[2 * i + 1]] = 2 * day_;
+    }
+    int oldTracks = tracks_;
+    for (int i = 0; i < n; ++i) {
+      int start = snowFalls[2 * i] * boardSize_ + snowFalls[2 * i + 1];
+      if (mark_[start] != 2 * day_) continue;
+      mark_[start] = 2 * day_ + 1;
+      int head = 0;
+      int tail = 0;
+      queue_[tail++] = start;
+      int sumRow = 0, sumCol = 0;
+      int minRow = boardSize_, maxRow = 0, minCol = boardSize_, maxCol = 0;
+      while (head < tail) {
+        int cell = queue_[head++];
+        int row = cell / boardSize_;
+        int col = cell % boardSize_;
+        sumRow += row;
+        sumCol += col;
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+        for (int r = Math.max(0, row - JOIN);
+            r <= Math.min(boardSize_ - 1, row + JOIN); ++r) {
+          for (int c = Math.max(0, col - JOIN);
+              c <= Math.min(boardSize_ - 1, col + JOIN); ++c) {
+            if (mark_[r * boardSize_ + c] == 2 * day_) {
+              mark_[r * boardSize_ + c] = 2 * day_ + 1;
+              queue_[tail++] = r * boardSize_ + c;
+            }
+          }
+        }
+      }
+      track((double) sumRow / tail, (double) sumCol / tail,
+          Math.max(maxRow - minRow, maxCol - minCol) / 2, oldTracks);
+    }
+    // Old or long-silent tracks are dropped.
+    int kept = 0;
+    for (int t = 0; t < tracks_; ++t) {
+      if (seen_[t] != day_) missed_[t]++;
+      age_[t]++;
+      if (missed_[t] > MAX_MISSED || age_[t] > MAX_AGE) continue;
+      copy(t, kept++);
+    }
+    tracks_ = kept;
+  }
+
+  private void track(double row, double col, int radius, int oldTracks) {
+    int best = -1;
+    double bestDist = MATCH;
+    for (int t = 0; t < oldTracks; ++t) {
+      if (seen_[t] == day_) continue;
+      int days = missed_[t] + 1;
+      double dist = Math.max(Math.abs(row_[t] + days * dRow_[t] - row),
+          Math.abs(col_[t] + days * dCol_[t] - col));
+      if (dist <= bestDist) {
+        bestDist = dist;
+        best = t;
+      }
+    }
+    if (best == -1) {
+      if (tracks_ == row_.length) return;
+      best = tracks_++;
+      row_[best] = row;
+      col_[best] = col;
+      dRow_[best] = 0;
+      dCol_[best] = 0;
+      age_[best] = 0;
+      hits_[best] = 0;
+    } else {
+      // Average the step over the days the cloud was silent.
+      int days = missed_[best] + 1;
+      double stepRow = (row - row_[best]) / days;
+      double stepCol = (col - col_[best]) / days;
+      boolean first = hits_[best] == 1;
+      dRow_[best] = first ? stepRow : (dRow_[best] + stepRow) / 2;
+      dCol_[best] = first ? stepCol : (dCol_[best] + stepCol) / 2;
+      row_[best] = row;
+      col_[best] = col;
+    }
+    radius_[best] = radius;
+    hits_[best]++;
+    missed_[best] = 0;
+    seen_[best] = day_;
+  }
+
+  private void copy(int from, int to) {
+    if (from == to) return;
+    row_[to] = row_[from];
+    col_[to] = col_[from];
+    dRow_[to] = dRow_[from];
+    dCol_[to] = dCol_[from];
+    radius_[to] = radius_[from];
+    age_[to] = age_[from];
+    hits_[to] = hits_[from];
+    missed_[to] = missed_[from];
+    seen_[to] = seen_[from];
+  }
+
+  public int size() {
+    return tracks_;
+  }
+
+  // Most likely centre of track t's snow tomorrow, as row * boardSize + col.
+  public int predictedCell(int t) {
+    int days = missed_[t] + 1;
+    int row = (int) Math.round(row_[t] + days * dRow_[t]);
+    int col = (int) Math.round(col_[t] + days * dCol_[t]);
+    row = Math.max(0, Math.min(boardSize_ - 1, row));
+    col = Math.max(0, Math.min(boardSize_ - 1, col));
+    return row * boardSize_ + col;
+  }
+
+  public int radius(int t) {
+    return radius_[t];
+  }
+}
+
+// Hires when the fines a new worker saves outweigh its remaining salary.
+class HiringController {
+  private double rate_;
+  private double tau_;
+  private double discount_;
+  private int salary_;
+  private int snowFine_;
+  private int days_;
+  private int day_;
+  private double snowRate_;
+  private double waitDays_;
+  private int waitSamples_;
+
+  HiringController(int salary, int snowFine, int days, double rate,
+      double tau, double discount) {
+    rate_ = rate;
+    tau_ = tau;
+    discount_ = discount;
+    salary_ = salary;
+    snowFine_ = snowFine;
+    days_ = days;
+  }
+
+  public void startDay(int day, int newSnow) {
+    day_ = day;
+    snowRate_ += rate_ * (newSnow - snowRate_);
+  }
+
+  // A cell got served by a worker that needs this many moves to reach it.
+  public void served(int distance) {
+    int wait = Math.max(0, distance - 1);
+    waitSamples_++;
+    waitDays_ += Math.max(rate_, 1.0 / waitSamples_) * (wait - waitDays_);
+  }
+
+  // wait: days the cell would stay snowed without a hire.
+  public boolean worthHiring(int workers, double wait) {
+    int remaining = days_ - day_ + 1;
+    double marginal;
+    if (snowRate_ > workers * tau_) {
+      marginal = Math.min(tau_, snowRate_ - workers * tau_) * remaining / 2;
+    } else {
+      marginal = discount_ * snowRate_ * waitDays_
+          * (1 - Math.sqrt((double) workers / (workers + 1)));
+    }
+    double saved = Math.min(wait, remaining) + marginal * remaining;
+    return snowFine_ * saved > (double) salary_ * remaining;
+  }
+}
+
+// Copy-on-write board state for rollouts; a parent must outlive its forks.
+class SimState {
+  private int boardSize_;
+  private long[] snow_;
+  private long[] snowBuf_;
+  private boolean ownSnow_;
+  private int[] row_;
+  private int[] col_;
+  private int[] rowBuf_;
+  private int[] colBuf_;
+  private boolean ownWorkers_;
+  private int workers_;
+  private long cost_;
+
+  SimState(int boardSize, int maxWorkers) {
+    boardSize_ = boardSize;
+    snowBuf_ = new long[boardSize];
+    rowBuf_ = new int[maxWorkers];
+    colBuf_ = new int[maxWorkers];
+  }
+
+  public void load(BitBoard snow, int[] rows, int[] cols, int workers) {
+    for (int r = 0; r < boardSize_; ++r) {
+      snowBuf_[r] = snow.row(r);
+    }
+    System.arraycopy(rows, 0, rowBuf_, 0, workers);
+    System.arraycopy(cols, 0, colBuf_, 0, workers);
+    snow_ = snowBuf_;
+    row_ = rowBuf_;
+    col_ = colBuf_;
+    ownSnow_ = true;
+    ownWorkers_ = true;
+    workers_ = workers;
+    cost_ = 0;
+  }
+
+  public void fork(SimState parent) {
+    snow_ = parent.snow_;
+    row_ = parent.row_;
+    col_ = parent.col_;
+    ownSnow_ = false;
+    ownWorkers_ = false;
+    workers_ = parent.workers_;
+    cost_ = parent.cost_;
+  }
+
+  private void writeSnow() {
+    if (ownSnow_) return;
+    System.arraycopy(snow_, 0, snowBuf_, 0, boardSize_);
+    snow_ = snowBuf_;
+    ownSnow_ = true;
+  }
+
+  private void writeWorkers() {
+    if (ownWorkers_) return;
+    System.arraycopy(row_, 0, rowBuf_, 0, workers_);
+    System.arraycopy(col_, 0, colBuf_, 0, workers_);
+    row_ = rowBuf_;
+    col_ = colBuf_;
+    ownWorkers_ = true;
+  }
+
+  public long snowRow(int row) {
+    return snow_[row];
+  }
+
+  public boolean snowed(int row, int col) {
+    return (snow_[row] >>> col & 1L) != 0;
+  }
+
+  public void addSnow(int row, int col) {
+    if (snowed(row, col)) return;
+    writeSnow();
+    snow_[row] |= 1L << col;
+  }
+
+  public void clearSnow(int row, int col) {
+    if (!snowed(row, col)) return;
+    writeSnow();
+    snow_[row] &= ~(1L << col);
+  }
+
+  public int workers() {
+    return workers_;
+  }
+
+  public int row(int id) {
+    return row_[id];
+  }
+
+  public int col(int id) {
+    return col_[id];
+  }
+
+  public void hire(int row, int col) {
+    writeWorkers();
+    row_[workers_] = row;
+    col_[workers_] = col;
+    workers_++;
+    clearSnow(row, col);
+  }
+
+  public void moveTo(int id, int row, int col) {
+    writeWorkers();
+    row_[id] = row;
+    col_[id] = col;
+    clearSnow(row, col);
+  }
+
+  // Clears snow under workers, then charges the day's fines and salaries.
+  public void endDay(int salary, int snowFine) {
+    for (int id = 0; id < workers_; ++id) {
+      clearSnow(row_[id], col_[id]);
+    }
+    int snowed = 0;
+    for (int r = 0; r < boardSize_; ++r) {
+      snowed += Long.bitCount(snow_[r]);
+    }
+    cost_ += (long) snowFine * snowed + (long) salary * workers_;
+  }
+
+  public long cost() {
+    return cost_;
+  }
+}
+
+// Vetoes today's last hire if greedy rollouts over sampled snowfall say so.
+class RolloutPlanner {
+  private static final int RINGS = 4;
+
+  private int boardSize_;
+  private int salary_;
+  private int snowFine_;
+  private int horizon_;
+  private int samples_;
+  private int reach_;
+  private Random random_;
+
+  private int[][] history_;
+  private int[] historyCount_;
+  private int days_;
+  private int[][] future_;
+
+  private SimState root_;
+  private SimState keep_;
+  private SimState drop_;
+  private SimState sim_;
+  private long[] claimed_;
+  private int remaining_;
+
+  RolloutPlanner(int boardSize, int salary, int snowFine, int maxWorkers,
+      int horizon, int samples, int history, int reach) {
+    boardSize_ = boardSize;
+    salary_ = salary;
+    snowFine_ = snowFine;
+    horizon_ = horizon;
+    samples_ = samples;
+    reach_ = reach;
+    random_ = new Random(boardSize * 31 + salary * 7 + snowFine);
+    history_ = new int[history][];
+    historyCount_ = new int[history];
+    for (int h = 0; h < history; ++h) {
+      history_[h] = new int[boardSize * boardSize];
+    }
+    future_ = new int[samples][horizon];
+    root_ = new SimState(boardSize, maxWorkers);
+    keep_ = new SimState(boardSize, maxWorkers);
+    drop_ = new SimState(boardSize, maxWorkers);
+    sim_ = new SimState(boardSize, maxWorkers);
+    claimed_ = new long[boardSize];
+  }
+
+  // Remembers today's snowfall, as (row, col) pairs, for sampling futures.
+  public void record(int[] snowFalls) {
+    int slot = days_ % history_.length;
+    historyCount_[slot] = snowFalls.length / 2;
+    for (int i = 0; i < historyCount_[slot]; ++i) {
+      history_[slot][i] = snowFalls[2 * i] * boardSize_ + snowFalls[2 * i + 1];
+    }
+    days_++;
+  }
+
+  // Whether to drop the last of the hires in commands. snow, rows and cols
+  // are the board before commands; remaining counts today.
+  public boolean dropLastHire(BitBoard snow, int[] rows, int[] cols,
+      int workers, CommandBuffer commands, int hires, int remaining) {
+    if (days_ == 0 || hires == 0) return false;
+    remaining_ = remaining;
+    root_.load(snow, rows, cols, workers);
+    int known = Math.min(days_, history_.length);
+    for (int s = 0; s < samples_; ++s) {
+      for (int d = 0; d < horizon_; ++d) {
+        future_[s][d] = random_.nextInt(known);
+      }
+    }
+    startDay(keep_, commands, hires);
+    startDay(drop_, commands, hires - 1);
+    return rollouts(drop_) < rollouts(keep_);
+  }
+
+  // Plays today's commands, keeping only the first hires of them.
+  private void startDay(SimState state, CommandBuffer commands, int hires) {
+    state.fork(root_);
+    for (int i = 0; i < commands.size(); ++i) {
+      if (commands.op(i) == CommandBuffer.HIRE) {
+        if (hires-- > 0) state.hire(commands.row(i), commands.col(i));
+      } else {
+        state.moveTo(commands.id(i), commands.row(i), commands.col(i));
+      }
+    }
+    state.endDay(salary_, snowFine_);
+  }
+
+  // Total cost over the samples; each rollout's cost rate over its second
+  // half stands in for the days after the horizon.
+  private long rollouts(SimState start) {
+    long total = 0;
+    long tail = Math.max(0, remaining_ - 1 - horizon_);
+    for (int s = 0; s < samples_; ++s) {
+      sim_.fork(start);
+      long mid = 0;
+      for (int d = 0; d < horizon_; ++d) {
+        if (d == horizon_ / 2) mid = sim_.cost();
+        int day = future_[s][d];
+        for (int i = 0; i < historyCount_[day]; ++i) {
+          int cell = history_[day][i];
+          sim_.addSnow(cell / boardSize_, cell % boardSize_);
+        }
+        step(sim_);
+        sim_.endDay(salary_, snowFine_);
+      }
+      total += sim_.cost()
+          + (sim_.cost() - mid) * tail / (horizon_ - horizon_ / 2);
+    }
+    return total;
+  }
+
+  // Every worker not standing on snow takes one step toward the nearest
+  // unclaimed snowed cell within reach.
+  private void step(SimState state) {
+    for (int r = 0; r < boardSize_; ++r) {
+      claimed_[r] = 0;
+    }
+    for (int id = 0; id < state.workers(); ++id) {
+      int row = state.row(id);
+      int col = state.col(id);
+      if (state.snowed(row, col)) {
+        claimed_[row] |= 1L << col;
+        continue;
+      }
+      int target = nearestSnow(state, row, col, reach_);
+      if (target == -1) continue;
+      int tr = target / boardSize_;
+      int tc = target % boardSize_;
+      claimed_[tr] |= 1L << tc;
+      if (Math.abs(tr - row) >= Math.abs(tc - col)) {
+        row += tr > row ? 1 : -1;
+      } else {
+        col += tc > col ? 1 : -1;
+      }
+      state.moveTo(id, row, col);
+    }
+  }
+
+  // Nearest unclaimed snow by rings of growing Chebyshev radius, or -1.
+  private int nearestSnow(SimState state, int row, int col, int reach) {
+    for (int k = 1; k <= Math.min(reach, RINGS); ++k) {
+      int lo = Math.max(0, col - k);
+      int hi = Math.min(boardSize_ - 1, col + k);
+      long full = (-1L >>> (63 - hi)) & (-1L << lo);
+      long sides = (col - k >= 0 ? 1L << (col - k) : 0)
+          | (col + k < boardSize_ ? 1L << (col + k) : 0);
+      for (int r = Math.max(0, row - k);
+          r <= Math.min(boardSize_ - 1, row + k); ++r) {
+        long mask = (r == row - k || r == row + k) ? full : sides;
+        long bits = state.snowRow(r) & ~claimed_[r] & mask;
+        if (bits != 0) {
+          return r * boardSize_ + Long.numberOfTrailingZeros(bits);
+        }
+      }
+    }
+    int best = -1;
+    int bestDistance = reach + 1;
+    for (int r = 0; r < boardSize_; ++r) {
+      for (long bits = state.snowRow(r) & ~claimed_[r]; bits != 0;
+          bits &= bits - 1) {
+        int c = Long.numberOfTrailingZeros(bits);
+        int distance = Math.max(Math.abs(r - row), Math.abs(c - col));
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          best = r * boardSize_ + c;
+        }
+      }
+    }
+    return best;
+  }
+}
+
+// Swaps cells between a day's tasks while fewer cells stay snowed tonight.
+class PlanSearch {
+  private RouteTable table_;
+  private int tasks_;
+  private int[] worker_;
+  private int[] from_;
+  private int[] cell_;
+  private int idle_;
+  private int[] idleWorker_;
+  private int[] idleFrom_;
+
+  PlanSearch(RouteTable table, int capacity) {
+    table_ = table;
+    worker_ = new int[capacity];
+    from_ = new int[capacity];
+    cell_ = new int[capacity];
+    idleWorker_ = new int[capacity];
+    idleFrom_ = new int[capacity];
+  }
+
+  public void clear() {
+    tasks_ = 0;
+    idle_ = 0;
+  }
+
+  // worker -1 is a hire; from is ignored then.
+  public void addTask(int worker, int from, int cell) {
+    worker_[tasks_] = worker;
+    from_[tasks_] = from;
+    cell_[tasks_] = cell;
+    tasks_++;
+  }
+
+  public void addIdle(int worker, int from) {
+    idleWorker_[idle_] = worker;
+    idleFrom_[idle_] = from;
+    idle_++;
+  }
+
+  public int tasks() {
+    return tasks_;
+  }
+
+  public int worker(int t) {
+    return worker_[t];
+  }
+
+  public int cell(int t) {
+    return cell_[t];
+  }
+
+  public int idle() {
+    return idle_;
+  }
+
+  public int idleWorker(int k) {
+    return idleWorker_[k];
+  }
 
+  // 1 if the task's cell is still snowed tonight.
+  private int cost(int worker, int from, int cell) {
+    if (worker == -1) return 0;
+    return table_.distance(from, cell) > 1 ? 1 : 0;
+  }
+
+  // Runs up to maxPasses passes, stopping after one that changes nothing;
+  // deadline (System.nanoTime()) is only a safety net. Returns the number of
+  // accepted steps.
+  public int improve(int maxPasses, long deadline) {
+    int accepted = 0;
+    boolean improved = true;
+    for (int pass = 0; improved && pass < maxPasses; ++pass) {
+      improved = false;
+      for (int i = 0; i < tasks_; ++i) {
+        if (System.nanoTime() > deadline) return accepted;
+        for (int j = i + 1; j < tasks_; ++j) {
+          int delta = cost(worker_[i], from_[i], cell_[j])
+              + cost(worker_[j], from_[j], cell_[i])
+              - cost(worker_[i], from_[i], cell_[i])
+              - cost(worker_[j], from_[j], cell_[j]);
+          if (delta < 0) {
+            int cell = cell_[i];
+            cell_[i] = cell_[j];
+            cell_[j] = cell;
+            accepted++;
+            improved = true;
+          }
+        }
+        if (worker_[i] == -1) continue;
+        for (int k = 0; k < idle_; ++k) {
+          if (cost(idleWorker_[k], idleFrom_[k], cell_[i])
+              < cost(worker_[i], from_[i], cell_[i])) {
+            int worker = worker_[i];
+            int from = from_[i];
+            worker_[i] = idleWorker_[k];
+            from_[i] = idleFrom_[k];
+            idleWorker_[k] = worker;
+            idleFrom_[k] = from;
+            accepted++;
+            improved = true;
+          }
+        }
+      }
+    }
+    return accepted;
+  }
+}
+
+interface AssignmentEngine {
+  // Picks a worker for each of the open cells (row * boardSize + col), or -1
+  // to leave it unserved. Chosen workers are taken out of the idle index.
+  void assign(int[] cells, int cellCount, int[] assigned);
+}
+
+class GreedyAssignment implements AssignmentEngine {
+  private WorkerIndex index_;
   private int boardSize_;
-  private int salary_;
-  private int snowFine_;
+  private int maxDistance_;
 
-  private int numWorkers_;
-  private int[][] snowState_;
-  private int[][] workerState_;
+  GreedyAssignment(WorkerIndex index, int boardSize, int maxDistance) {
+    index_ = index;
+    boardSize_ = boardSize;
+    maxDistance_ = maxDistance;
+  }
+
+  public void assign(int[] cells, int cellCount, int[] assigned) {
+    for (int k = 0; k < cellCount; ++k) {
+      int worker = index_.nearest(cells[k] / boardSize_, cells[k] % boardSize_,
+          maxDistance_);
+      if (worker != -1) {
+        index_.remove(worker);
+      }
+      assigned[k] = worker;
+    }
+  }
+}
+
+// Sends each open cell to the worker whose territory it lies in; an owner
+// with several open cells takes the nearest. Cells whose owner is busy or
+// already taken go to the fallback engine.
+class TerritoryAssignment implements AssignmentEngine {
+  private WorkerIndex index_;
+  private Territories territories_;
+  private AssignmentEngine fallback_;
+  private int boardSize_;
+  private int[] choice_;
+  private int[] rest_;
+  private int[] restAssigned_;
+
+  TerritoryAssignment(WorkerIndex index, Territories territories,
+      AssignmentEngine fallback, int boardSize, int maxWorkers) {
+    index_ = index;
+    territories_ = territories;
+    fallback_ = fallback;
+    boardSize_ = boardSize;
+    rest_ = new int[boardSize * boardSize];
+    restAssigned_ = new int[boardSize * boardSize];
+    choice_ = new int[maxWorkers];
+    for (int w = 0; w < maxWorkers; ++w) {
+      choice_[w] = -1;
+    }
+  }
+
+  public void assign(int[] cells, int cellCount, int[] assigned) {
+    for (int k = 0; k < cellCount; ++k) {
+      int w = territories_.owner(cells[k]);
+      if (w == -1 || !index_.contains(w)) continue;
+      if (choice_[w] == -1
+          || distance(w, cells[k]) < distance(w, cells[choice_[w]])) {
+        choice_[w] = k;
+      }
+    }
+    for (int k = 0; k < cellCount; ++k) {
+      int w = territories_.owner(cells[k]);
+      assigned[k] = w != -1 && choice_[w] == k ? w : -1;
+      if (assigned[k] != -1) index_.remove(w);
+    }
+    int rest = 0;
+    for (int k = 0; k < cellCount; ++k) {
+      int w = territories_.owner(cells[k]);
+      if (w != -1) choice_[w] = -1;
+      if (assigned[k] == -1) rest_[rest++] = cells[k];
+    }
+    fallback_.assign(rest_, rest, restAssigned_);
+    rest = 0;
+    for (int k = 0; k < cellCount; ++k) {
+      if (assigned[k] == -1) assigned[k] = restAssigned_[rest++];
+    }
+  }
+
+  private int distance(int w, int cell) {
+    return Math.abs(index_.row(w) - cell / boardSize_)
+        + Math.abs(index_.col(w) - cell % boardSize_);
+  }
+}
+
+// Auction of open cells among nearby idle workers, warm-started from yesterday.
+class AuctionAssignment implements AssignmentEngine {
+  private WorkerIndex index_;
+  private int boardSize_;
+  private int maxDistance_;
+  private int candidates_;
+
+  private int[] nearby_;
+  private int[] edgeWorker_;
+  private int[] edgeObject_;
+  private int[] edgeDistance_;
+  private int[] workerStart_;
+  private int[] workerEdges_;
+  private int[] fill_;
+
+  private int[] owner_;
+  private int[] price_;
+  private int[] objectOf_;
+  private int[] queue_;
 
   private int day_;
-  private int slice;
+  private int[] objectDay_;
+  private int[] cellPrice_;
+
+  AuctionAssignment(WorkerIndex index, int boardSize, int maxDistance,
+      int candidates, int maxWorkers) {
+    index_ = index;
+    boardSize_ = boardSize;
+    maxDistance_ = maxDistance;
+    candidates_ = candidates;
+    int cells = boardSize * boardSize;
+    nearby_ = new int[maxWorkers];
+    edgeWorker_ = new int[cells * candidates];
+    edgeObject_ = new int[cells * candidates];
+    edgeDistance_ = new int[cells * candidates];
+    workerStart_ = new int[maxWorkers + 1];
+    workerEdges_ = new int[cells * candidates];
+    fill_ = new int[maxWorkers];
+    owner_ = new int[cells];
+    price_ = new int[cells];
+    objectOf_ = new int[maxWorkers];
+    queue_ = new int[maxWorkers];
+    day_ = 0;
+    objectDay_ = new int[cells];
+    cellPrice_ = new int[cells];
+  }
+
+  public void assign(int[] cells, int cellCount, int[] assigned) {
+    day_++;
+    int edges = 0;
+    for (int k = 0; k < cellCount; ++k) {
+      int row = cells[k] / boardSize_;
+      int col = cells[k] % boardSize_;
+      price_[k] = objectDay_[cells[k]] == day_ - 1 ? cellPrice_[cells[k]] : 0;
+      objectDay_[cells[k]] = day_;
+      int count = index_.within(row, col, maxDistance_, nearby_);
+      for (int n = 0; n < count && n < candidates_; ++n) {
+        int best = n;
+        int bestDistance = distance(nearby_[n], row, col);
+        for (int m = n + 1; m < count; ++m) {
+          int d = distance(nearby_[m], row, col);
+          if (d < bestDistance) {
+            best = m;
+            bestDistance = d;
+          }
+        }
+        int w = nearby_[best];
+        nearby_[best] = nearby_[n];
+        nearby_[n] = w;
+        edgeWorker_[edges] = w;
+        edgeObject_[edges] = k;
+        edgeDistance_[edges] = bestDistance;
+        edges++;
+      }
+    }
+
+    int workers = fill_.length;
+    for (int w = 0; w <= workers; ++w) {
+      workerStart_[w] = 0;
+    }
+    for (int e = 0; e < edges; ++e) {
+      workerStart_[edgeWorker_[e] + 1]++;
+    }
+    for (int w = 0; w < workers; ++w) {
+      workerStart_[w + 1] += workerStart_[w];
+      fill_[w] = workerStart_[w];
+    }
+    for (int e = 0; e < edges; ++e) {
+      workerEdges_[fill_[edgeWorker_[e]]++] = e;
+    }
+
+    int bidders = 0;
+    for (int w = 0; w < workers; ++w) {
+      if (workerStart_[w + 1] > workerStart_[w]) bidders++;
+    }
+    int scale = bidders + 1;
+
+    if (!auction(cellCount, scale)) {
+      for (int k = 0; k < cellCount; ++k) {
+        price_[k] = 0;
+      }
+      auction(cellCount, scale);
+    }
+
+    for (int k = 0; k < cellCount; ++k) {
+      int w = owner_[k];
+      assigned[k] = w;
+      cellPrice_[cells[k]] = price_[k];
+      if (w != -1) {
+        index_.remove(w);
+      }
+    }
+  }
 
-  private ArrayList<String> commands;
-  private int[] moved_workers;
-  private ArrayList<MoveData> moving_commands;
-  private ArrayList<HireData> hiring_commands;
+  // Runs the auction from the current prices with every bidder unmatched.
+  // Returns false if an unmatched cell kept a positive price, the one way a
+  // warm start can end short of the optimum.
+  private boolean auction(int cellCount, int scale) {
+    int workers = fill_.length;
+    for (int k = 0; k < cellCount; ++k) {
+      owner_[k] = -1;
+    }
+    int head = 0;
+    int tail = 0;
+    int pending = 0;
+    for (int w = 0; w < workers; ++w) {
+      objectOf_[w] = -1;
+      if (workerStart_[w + 1] == workerStart_[w]) continue;
+      queue_[tail] = w;
+      tail = (tail + 1) % queue_.length;
+      pending++;
+    }
 
-  private LinkedList<Point> snowCells_;
+    while (pending > 0) {
+      int w = queue_[head];
+      head = (head + 1) % queue_.length;
+      pending--;
+      int first = -1;
+      int firstValue = 0;
+      int secondValue = 0;
+      for (int i = workerStart_[w]; i < workerStart_[w + 1]; ++i) {
+        int e = workerEdges_[i];
+        int k = edgeObject_[e];
+        int value = (maxDistance_ + 1 - edgeDistance_[e]) * scale - price_[k];
+        if (first == -1 || value > firstValue) {
+          if (first != -1 && firstValue > secondValue) secondValue = firstValue;
+          first = k;
+          firstValue = value;
+        } else if (value > secondValue) {
+          secondValue = value;
+        }
+      }
+      if (firstValue <= 0) continue;
+      price_[first] += firstValue - secondValue + 1;
+      int previous = owner_[first];
+      owner_[first] = w;
+      objectOf_[w] = first;
+      if (previous != -1) {
+        objectOf_[previous] = -1;
+        queue_[tail] = previous;
+        tail = (tail + 1) % queue_.length;
+        pending++;
+      }
+    }
 
-  class HireData {
-    public int row;
-    public int col;
-    public int id;
-    HireData(int _row, int _col, int _id) {
-      row = _row;
-      col = _col;
-      id = _id;
+    for (int k = 0; k < cellCount; ++k) {
+      if (owner_[k] == -1 && price_[k] > 0) return false;
     }
+    return true;
+  }
+
+  private int distance(int w, int row, int col) {
+    return Math.abs(index_.row(w) - row) + Math.abs(index_.col(w) - col);
   }
+}
 
-  class MoveData {
-    public int id;
-    public int start_row;
-    public int start_col;
-    public int end_row;
-    public int end_col;
-    public String dir;
-    MoveData(int _id, int _start_row, int _start_col,
-        int _end_row, int _end_col, String _dir) {
-      id = _id;
-      start_row = _start_row;
-      start_col = _start_col;
-      end_row = _end_row;
-      end_col = _end_col;
-      dir = _dir;
+// Plans splits x splits board regions in parallel, merged deterministically.
+class RegionalAssignment implements AssignmentEngine {
+  private static ExecutorService pool_;
+
+  private WorkerIndex index_;
+  private int boardSize_;
+  private int maxDistance_;
+  private int span_;
+  private int splits_;
+  private WorkerIndex[] regionIndex_;
+  private AssignmentEngine[] engines_;
+  private int[] regionOf_;
+  private int[] regionCount_;
+  private int[][] regionCells_;
+  private int[][] regionOrigin_;
+  private int[][] regionAssigned_;
+  private List<Callable<Object>> jobs_;
+  private AssignmentEngine handoff_;
+  private int[] leftCells_;
+  private int[] leftOrigin_;
+  private int[] leftAssigned_;
+
+  private static synchronized ExecutorService pool() {
+    if (pool_ == null) {
+      pool_ = Executors.newFixedThreadPool(Fixed.PLAN_THREADS,
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "region-planner");
+              t.setDaemon(true);
+              return t;
+            }
+          });
     }
+    return pool_;
   }
 
-  class Point {
-    public int row;
-    public int col;
-    Point(int _row, int _col) {
-      row = _row;
-      col = _col;
+  // regionIndex[r] and engines[r] belong to region r = (row / span) * splits
+  // + col / span; each engine must plan over its own index.
+  RegionalAssignment(WorkerIndex index, int boardSize, int maxDistance,
+      int splits, WorkerIndex[] regionIndex, AssignmentEngine[] engines,
+      AssignmentEngine handoff, int maxWorkers) {
+    index_ = index;
+    boardSize_ = boardSize;
+    maxDistance_ = maxDistance;
+    splits_ = splits;
+    span_ = (boardSize + splits - 1) / splits;
+    regionIndex_ = regionIndex;
+    engines_ = engines;
+    regionOf_ = new int[maxWorkers];
+    for (int id = 0; id < maxWorkers; ++id) {
+      regionOf_[id] = -1;
     }
+    regionCount_ = new int[splits * splits];
+    regionCells_ = new int[splits * splits][span_ * span_];
+    regionOrigin_ = new int[splits * splits][span_ * span_];
+    regionAssigned_ = new int[splits * splits][span_ * span_];
+    jobs_ = new ArrayList<Callable<Object>>();
+    handoff_ = handoff;
+    leftCells_ = new int[boardSize * boardSize];
+    leftOrigin_ = new int[boardSize * boardSize];
+    leftAssigned_ = new int[boardSize * boardSize];
   }
 
-  SnowCleaning() {
+  private int region(int row, int col) {
+    return (row / span_) * splits_ + col / span_;
+  }
+
+  public void assign(int[] cells, int cellCount, int[] assigned) {
+    for (int id = 0; id < regionOf_.length; ++id) {
+      if (regionOf_[id] != -1) {
+        regionIndex_[regionOf_[id]].remove(id);
+        regionOf_[id] = -1;
+      }
+      if (index_.contains(id)) {
+        regionOf_[id] = region(index_.row(id), index_.col(id));
+        regionIndex_[regionOf_[id]].add(id, index_.row(id), index_.col(id));
+      }
+    }
+    for (int r = 0; r < regionCount_.length; ++r) {
+      regionCount_[r] = 0;
+    }
+    for (int k = 0; k < cellCount; ++k) {
+      int r = region(cells[k] / boardSize_, cells[k] % boardSize_);
+      regionCells_[r][regionCount_[r]] = cells[k];
+      regionOrigin_[r][regionCount_[r]] = k;
+      regionCount_[r]++;
+    }
+    jobs_.clear();
+    for (int r = 0; r < regionCount_.length; ++r) {
+      if (regionCount_[r] == 0) continue;
+      final int region = r;
+      jobs_.add(new Callable<Object>() {
+        public Object call() {
+          engines_[region].assign(regionCells_[region], regionCount_[region],
+              regionAssigned_[region]);
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Object> job : pool().invokeAll(jobs_)) {
+        job.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    for (int r = 0; r < regionCount_.length; ++r) {
+      for (int j = 0; j < regionCount_[r]; ++j) {
+        int worker = regionAssigned_[r][j];
+        assigned[regionOrigin_[r][j]] = worker;
+        if (worker != -1) index_.remove(worker);
+      }
+    }
+    // Boundary handoff: leftover idle workers serve cells across borders.
+    int left = 0;
+    for (int k = 0; k < cellCount; ++k) {
+      if (assigned[k] == -1) {
+        leftCells_[left] = cells[k];
+        leftOrigin_[left++] = k;
+      }
+    }
+    handoff_.assign(leftCells_, left, leftAssigned_);
+    for (int j = 0; j < left; ++j) {
+      assigned[leftOrigin_[j]] = leftAssigned_[j];
+    }
+  }
+}
+
+// One day's commands as parallel primitive arrays. For a hire, row/col is
+// the cell and id the new worker; for a move, row/col is the destination.
+class CommandBuffer {
+  public static final byte HIRE = 'H';
+  public static final byte MOVE = 'M';
+
+  private byte[] op_;
+  private int[] id_;
+  private int[] row_;
+  private int[] col_;
+  private int[] dir_;
+  private int size_;
+
+  CommandBuffer(int capacity) {
+    op_ = new byte[capacity];
+    id_ = new int[capacity];
+    row_ = new int[capacity];
+    col_ = new int[capacity];
+    dir_ = new int[capacity];
+    size_ = 0;
+  }
+
+  public void clear() {
+    size_ = 0;
+  }
+
+  public int size() {
+    return size_;
+  }
+
+  public void addHire(int id, int row, int col) {
+    op_[size_] = HIRE;
+    id_[size_] = id;
+    row_[size_] = row;
+    col_[size_] = col;
+    dir_[size_] = -1;
+    size_++;
+  }
+
+  public void addMove(int id, int dir, int row, int col) {
+    op_[size_] = MOVE;
+    id_[size_] = id;
+    row_[size_] = row;
+    col_[size_] = col;
+    dir_[size_] = dir;
+    size_++;
+  }
+
+  public byte op(int i) {
+    return op_[i];
+  }
+
+  public int id(int i) {
+    return id_[i];
+  }
+
+  public int row(int i) {
+    return row_[i];
+  }
+
+  public int col(int i) {
+    return col_[i];
   }
 
-  private boolean isLocationSnowed(int row, int col) {
-    return (snowState_[row][col] == 1);
+  public int dir(int i) {
+    return dir_[i];
   }
 
-  private boolean isIdleWorker(int row, int col) {
-    return ((workerState_[row][col] != -1) &&
-        !isLocationSnowed(row, col));
+  // Drops command i, keeping the order of the rest.
+  public void remove(int i) {
+    int tail = size_ - i - 1;
+    System.arraycopy(op_, i + 1, op_, i, tail);
+    System.arraycopy(id_, i + 1, id_, i, tail);
+    System.arraycopy(row_, i + 1, row_, i, tail);
+    System.arraycopy(col_, i + 1, col_, i, tail);
+    System.arraycopy(dir_, i + 1, dir_, i, tail);
+    size_--;
   }
 
-  private String getDirection(int dx, int dy) {
-    if (dx > 0) {
-      return "D";
+  public String[] toStrings() {
+    String[] ret = new String[size_];
+    for (int i = 0; i < size_; ++i) {
+      if (op_[i] == HIRE) {
+        ret[i] = "H " + row_[i] + " " + col_[i];
+      } else {
+        ret[i] = "M " + id_[i] + " " + Fixed.DIR_NAMES[dir_[i]];
+      }
     }
-    if (dx < 0) {
-      return "U";
+    return ret;
+  }
+}
+
+// Serializes command buffers straight into a byte buffer, without building
+// a String per command. In binary mode a day is a 2-byte big-endian count
+// followed by 3 bytes per command: 'H' row col, or 'M' id dir.
+class CommandWriter {
+  private OutputStream out_;
+  private boolean binary_;
+  private byte[] buf_;
+  private int pos_;
+
+  CommandWriter(OutputStream out, boolean binary, int capacity) {
+    out_ = out;
+    binary_ = binary;
+    buf_ = new byte[capacity];
+    pos_ = 0;
+  }
+
+  public void write(CommandBuffer commands) throws IOException {
+    if (binary_) {
+      writeBinary(commands);
+      return;
     }
-    if (dy > 0) {
-      return "R";
+    writeInt(commands.size());
+    writeByte('\n');
+    for (int i = 0; i < commands.size(); ++i) {
+      writeByte(commands.op(i));
+      writeByte(' ');
+      if (commands.op(i) == CommandBuffer.HIRE) {
+        writeInt(commands.row(i));
+        writeByte(' ');
+        writeInt(commands.col(i));
+      } else {
+        writeInt(commands.id(i));
+        writeByte(' ');
+        writeByte(Fixed.DIR_STR.charAt(commands.dir(i)));
+      }
+      writeByte('\n');
     }
-    if (dy < 0) {
-      return "L";
+  }
+
+  private void writeBinary(CommandBuffer commands) throws IOException {
+    writeByte(commands.size() >> 8);
+    writeByte(commands.size());
+    for (int i = 0; i < commands.size(); ++i) {
+      writeByte(commands.op(i));
+      if (commands.op(i) == CommandBuffer.HIRE) {
+        writeByte(commands.row(i));
+        writeByte(commands.col(i));
+      } else {
+        writeByte(commands.id(i));
+        writeByte(commands.dir(i));
+      }
     }
-    return "";
   }
 
-  private boolean isValidCell(int row, int col) {
-    return (row >= 0 && row < boardSize_ && col >=0 && col < boardSize_);
+  public void flush() throws IOException {
+    flushBuffer();
+    out_.flush();
   }
 
-  private MoveData nearestIdleWorker(int row, int col) {
-    int min_distance = 1000;
-    int start_row = row;
-    int start_col = col;
-    for (int i = -Fixed.BOUNDS; i <= Fixed.BOUNDS; ++i) {
-      for (int j = -Fixed.BOUNDS; j <= Fixed.BOUNDS; ++j) {
-        if (!isValidCell(row + i, col + j)) continue;
-        int worker = workerState_[row + i][col + j];
-        if (isIdleWorker(row + i, col + j)) {
-          if (moved_workers[worker] == 1) continue;
-          int distance = Math.abs(i) + Math.abs(j);
-          if (distance < min_distance) {
-            min_distance = distance;
-            start_row = row + i;
-            start_col = col + j;
-          }
-        }
+  private void flushBuffer() throws IOException {
+    out_.write(buf_, 0, pos_);
+    pos_ = 0;
+  }
+
+  private void writeByte(int b) throws IOException {
+    if (pos_ == buf_.length) flushBuffer();
+    buf_[pos_++] = (byte) b;
+  }
+
+  private void writeInt(int value) throws IOException {
+    if (value >= 10) writeInt(value / 10);
+    writeByte('0' + value % 10);
+  }
+}
+
+// Byte-level tokenizer for the solver's input. Text mode reads whitespace
+// separated integers; binary mode reads big-endian fixed-width fields.
+class InputReader {
+  private InputStream in_;
+  private byte[] buf_;
+  private int len_;
+  private int pos_;
+
+  InputReader(InputStream in, int capacity) {
+    in_ = in;
+    buf_ = new byte[capacity];
+    len_ = 0;
+    pos_ = 0;
+  }
+
+  public int read() throws IOException {
+    if (pos_ == len_) {
+      len_ = in_.read(buf_, 0, buf_.length);
+      pos_ = 0;
+      if (len_ <= 0) {
+        len_ = 0;
+        throw new EOFException();
       }
     }
-    if (min_distance < 1000) {
-      int dx = row - start_row;
-      int dy = col - start_col;
-      String direction = getDirection(dx, dy);
-      int dir = Fixed.DIR_STR.indexOf(direction);
-      int end_row = start_row + Fixed.DR[dir];
-      int end_col = start_col + Fixed.DC[dir];
-      return new MoveData(workerState_[start_row][start_col], start_row,
-          start_col, start_row + Fixed.DR[dir], start_col + Fixed.DC[dir],
-          direction);
+    return buf_[pos_++] & 0xff;
+  }
+
+  public int readInt() throws IOException {
+    int b = read();
+    while (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+      b = read();
+    }
+    boolean negative = (b == '-');
+    if (negative) b = read();
+    if (b < '0' || b > '9') {
+      throw new NumberFormatException("unexpected byte " + b);
+    }
+    int value = 0;
+    while (b >= '0' && b <= '9') {
+      value = value * 10 + (b - '0');
+      b = read();
+    }
+    return negative ? -value : value;
+  }
+
+  public int readShort() throws IOException {
+    return (read() << 8) | read();
+  }
+
+  public int readInt32() throws IOException {
+    return (read() << 24) | (read() << 16) | (read() << 8) | read();
+  }
+}
+
+// Log-linear latency histogram in the spirit of HdrHistogram: values below
+// 2^SUB_BITS are exact, larger ones keep SUB_BITS bits of precision (~3%).
+class LatencyHistogram {
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+
+  private long[] counts_;
+  private long total_;
+  private long max_;
+
+  LatencyHistogram() {
+    counts_ = new long[64 * SUB_COUNT];
+  }
+
+  public void record(long value) {
+    if (value < 0) value = 0;
+    counts_[bucket(value)]++;
+    total_++;
+    if (value > max_) max_ = value;
+  }
+
+  public long count() {
+    return total_;
+  }
+
+  public long max() {
+    return max_;
+  }
+
+  // Highest value of the bucket holding the p-th percentile, capped at max.
+  public long percentile(double p) {
+    long rank = (long) Math.ceil(p / 100.0 * total_);
+    if (rank < 1) rank = 1;
+    long seen = 0;
+    for (int i = 0; i < counts_.length; ++i) {
+      seen += counts_[i];
+      if (seen >= rank) return Math.min(highest(i), max_);
+    }
+    return max_;
+  }
+
+  private static int bucket(long value) {
+    int msb = 63 - Long.numberOfLeadingZeros(value);
+    if (msb < SUB_BITS) return (int) value;
+    int shift = msb - SUB_BITS;
+    return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) - SUB_COUNT);
+  }
+
+  private static long highest(int bucket) {
+    if (bucket < SUB_COUNT) return bucket;
+    int shift = (bucket >> SUB_BITS) - 1;
+    long sub = bucket & (SUB_COUNT - 1);
+    return ((SUB_COUNT + sub + 1) << shift) - 1;
+  }
+}
+
+// Per-day samples of nextDay latency and load, kept in preallocated arrays.
+class DayStats {
+  private LatencyHistogram latency_;
+  private long[] nanos_;
+  private int[] snow_;
+  private int[] workers_;
+  private int[] commands_;
+  private int days_;
+
+  DayStats(int maxDays) {
+    latency_ = new LatencyHistogram();
+    nanos_ = new long[maxDays];
+    snow_ = new int[maxDays];
+    workers_ = new int[maxDays];
+    commands_ = new int[maxDays];
+    days_ = 0;
+  }
+
+  public void record(long nanos, int snow, int workers, int commands) {
+    latency_.record(nanos);
+    if (days_ == nanos_.length) return;
+    nanos_[days_] = nanos;
+    snow_[days_] = snow;
+    workers_[days_] = workers;
+    commands_[days_] = commands;
+    days_++;
+  }
+
+  public String summary() {
+    return "Latency us: p50 = " + latency_.percentile(50) / 1000
+        + ", p99 = " + latency_.percentile(99) / 1000
+        + ", max = " + latency_.max() / 1000;
+  }
+
+  public void writeCsv(PrintStream out) {
+    out.println("day,nanos,snow,workers,commands");
+    for (int i = 0; i < days_; ++i) {
+      out.println(i + "," + nanos_[i] + "," + snow_[i] + "," + workers_[i]
+          + "," + commands_[i]);
     }
-    return null;
+  }
+}
+
+class SnowCleaning {
+
+  private int boardSize_;
+  private int salary_;
+  private int snowFine_;
+
+  private int numWorkers_;
+  private BitBoard snow_;
+  private WorkerMap workers_;
+  private Territories territories_;
+  private int[] workerRow_;
+  private int[] workerCol_;
+  private WorkerIndex idleWorkers_;
+  private AssignmentEngine engine_;
+  private int[] openCells_;
+  private int[] assigned_;
+  private RouteTable routeTable_;
+  private SnowForecast forecast_;
+  private HiringController hiring_;
+  private PlanSearch search_;
+  private RolloutPlanner rollout_;
+  private int[] commandTarget_;
+  private String overrides_ = "";
+  private SolverConfig config_;
+  private int bounds_;
+
+  private int day_;
+  private int snowLoad_;
+
+  private CommandBuffer commands_;
+
+  private SnowSet snowCells_;
+
+  SnowCleaning() {
+  }
+
+  // Parameter overrides for the next init, as "name=value,..."; used by the
+  // visualizer's tuner.
+  public void configure(String overrides) {
+    new SolverConfig(overrides);  // rejects unknown names now, not at init
+    overrides_ = overrides;
+  }
+
+  public static int bucket(int boardSize, int salary, int snowFine) {
+    return SolverConfig.bucket(boardSize, salary, snowFine);
+  }
+
+  private void moveToward(int worker, int row, int col) {
+    int start_row = workerRow_[worker];
+    int start_col = workerCol_[worker];
+    int dir = routeTable_.firstStep(start_row * boardSize_ + start_col,
+        row * boardSize_ + col);
+    commandTarget_[commands_.size()] = row * boardSize_ + col;
+    commands_.addMove(worker, dir, start_row + Fixed.DR[dir],
+        start_col + Fixed.DC[dir]);
+  }
+
+  private void hire(int row, int col) {
+    commandTarget_[commands_.size()] = row * boardSize_ + col;
+    commands_.addHire(numWorkers_, row, col);
+    numWorkers_++;
   }
 
   public int init(int boardSize, int salary, int snowFine) {
@@ -140,80 +1973,296 @@ class SnowCleaning {
     snowFine_ = snowFine;
     numWorkers_ = 0;
     day_ = 0;
-    snowCells_ = new LinkedList<Point>();
-    snowState_ = new int[boardSize_][boardSize_];
-    workerState_ = new int[boardSize_][boardSize_];
-    for (int i = 0; i < boardSize_; ++i) {
-      for (int j = 0; j < boardSize_; ++j) {
-        workerState_[i][j] = -1;
-        snowState_[i][j] = 0;
+    config_ = SolverConfig.forCase(boardSize, salary, snowFine);
+    config_.set(overrides_);
+    bounds_ = config_.intValue(SolverConfig.BOUNDS);
+    snowCells_ = new SnowSet(boardSize_ * boardSize_);
+    snow_ = new BitBoard(boardSize_);
+    workers_ = new WorkerMap(boardSize_, Fixed.MAX_WORKERS);
+    territories_ = new Territories(boardSize_, Fixed.MAX_WORKERS);
+    workerRow_ = new int[Fixed.MAX_WORKERS];
+    workerCol_ = new int[Fixed.MAX_WORKERS];
+    idleWorkers_ = new WorkerIndex(boardSize_, Fixed.BUCKET_SIZE,
+        Fixed.MAX_WORKERS);
+    int splits = config_.intValue(SolverConfig.REGION_SPLITS);
+    if (splits > 1) {
+      int regions = splits * splits;
+      WorkerIndex[] regionIndex = new WorkerIndex[regions];
+      AssignmentEngine[] engines = new AssignmentEngine[regions];
+      for (int r = 0; r < regions; ++r) {
+        regionIndex[r] = new WorkerIndex(boardSize_, Fixed.BUCKET_SIZE,
+            Fixed.MAX_WORKERS);
+        engines[r] = newEngine(regionIndex[r]);
       }
+      engine_ = new RegionalAssignment(idleWorkers_, boardSize_, bounds_,
+          splits, regionIndex, engines, newEngine(idleWorkers_),
+          Fixed.MAX_WORKERS);
+    } else {
+      engine_ = newEngine(idleWorkers_);
     }
+    openCells_ = new int[boardSize_ * boardSize_];
+    assigned_ = new int[boardSize_ * boardSize_];
+    routeTable_ = new RouteTable(boardSize_);
+    forecast_ = new SnowForecast(boardSize_, Fixed.FORECAST_TRACKS);
+    hiring_ = new HiringController(salary_, snowFine_, Fixed.DAYS,
+        config_.value(SolverConfig.HIRE_RATE),
+        config_.value(SolverConfig.HIRE_TAU),
+        config_.value(SolverConfig.HIRE_DISCOUNT));
+    search_ = new PlanSearch(routeTable_, Fixed.MAX_WORKERS);
+    commandTarget_ = new int[Fixed.MAX_WORKERS];
+    rollout_ = new RolloutPlanner(boardSize_, salary_, snowFine_,
+        Fixed.MAX_WORKERS, config_.intValue(SolverConfig.ROLLOUT_DAYS),
+        config_.intValue(SolverConfig.ROLLOUT_SAMPLES),
+        config_.intValue(SolverConfig.ROLLOUT_HISTORY), 2 * boardSize_);
+    commands_ = new CommandBuffer(2 * Fixed.MAX_WORKERS);
     return 0;
   }
 
-  public void processSnowCell(int row, int col) {
-    if (snowState_[row][col] == 0) return;
-    boolean hasWorker = (workerState_[row][col] != -1);
-    if (!hasWorker) {
-      MoveData move_data = nearestIdleWorker(row, col);
-      if (move_data != null) {
-        commands.add("M " + move_data.id + " " + move_data.dir);
-        moved_workers[move_data.id] = 1;
-        moving_commands.add(move_data);
+  private AssignmentEngine newEngine(WorkerIndex index) {
+    if (Fixed.ENGINE == Fixed.ENGINE_TERRITORY) {
+      return new TerritoryAssignment(index, territories_,
+          new AuctionAssignment(index, boardSize_, bounds_,
+          config_.intValue(SolverConfig.CANDIDATES), Fixed.MAX_WORKERS),
+          boardSize_, Fixed.MAX_WORKERS);
+    }
+    if (Fixed.ENGINE == Fixed.ENGINE_AUCTION) {
+      return new AuctionAssignment(index, boardSize_, bounds_,
+          config_.intValue(SolverConfig.CANDIDATES), Fixed.MAX_WORKERS);
+    }
+    return new GreedyAssignment(index, boardSize_, bounds_);
+  }
+
+  public void processSnowCell(int row, int col, int worker) {
+    if (worker == -1) {
+      // Otherwise the nearest idle worker from anywhere comes; with none
+      // left, the cell waits its turn in the backlog.
+      worker = idleWorkers_.nearest(row, col, 2 * boardSize_);
+      double wait = worker != -1 ? routeTable_.distance(
+          workerRow_[worker] * boardSize_ + workerCol_[worker],
+          row * boardSize_ + col) - 1
+          : numWorkers_ == 0 ? Fixed.DAYS : (double) snowLoad_ / numWorkers_;
+      if (numWorkers_ < Fixed.MAX_WORKERS
+          && hiring_.worthHiring(numWorkers_, wait)) {
+        hire(row, col);
+        return;
+      }
+      if (worker == -1) return;
+      idleWorkers_.remove(worker);
+    }
+    hiring_.served(routeTable_.distance(
+        workerRow_[worker] * boardSize_ + workerCol_[worker],
+        row * boardSize_ + col));
+    moveToward(worker, row, col);
+  }
+
+  // Idle workers walk toward where tracked clouds should snow tomorrow,
+  // unless some worker will already be within reach of it.
+  private void prePosition() {
+    for (int t = 0; t < forecast_.size(); ++t) {
+      int cell = forecast_.predictedCell(t);
+      int row = cell / boardSize_;
+      int col = cell % boardSize_;
+      if (workers_.occupancy().anyWithin(row, col, forecast_.radius(t) + 1)) {
+        continue;
+      }
+      int worker = idleWorkers_.nearest(row, col, bounds_);
+      if (worker == -1) continue;
+      idleWorkers_.remove(worker);
+      moveToward(worker, row, col);
+    }
+  }
+
+  // Runs PlanSearch over the commands planned so far and, if it found a
+  // better plan, emits that one instead. Hires keep their order, so their ids
+  // stay numWorkers_ - hires, ..., numWorkers_ - 1.
+  private void improvePlan() {
+    search_.clear();
+    int hires = 0;
+    for (int i = 0; i < commands_.size(); ++i) {
+      if (commands_.op(i) == CommandBuffer.HIRE) {
+        search_.addTask(-1, 0, commandTarget_[i]);
+        hires++;
       } else {
-        if (numWorkers_ < 100 && (numWorkers_ < Fixed.WORKER_SLICE * (1 + slice))) {
-          commands.add("H " + row + " " + col);
-          hiring_commands.add(new HireData(row, col, numWorkers_));
-          numWorkers_++;
-        }
+        int id = commands_.id(i);
+        search_.addTask(id, workerRow_[id] * boardSize_ + workerCol_[id],
+            commandTarget_[i]);
+      }
+    }
+    for (int id = 0; id < numWorkers_; ++id) {
+      if (idleWorkers_.contains(id)) {
+        search_.addIdle(id, workerRow_[id] * boardSize_ + workerCol_[id]);
+      }
+    }
+    long deadline = System.nanoTime()
+        + (long) (config_.value(SolverConfig.SEARCH_MILLIS) * 1000000);
+    if (search_.improve(config_.intValue(SolverConfig.SEARCH_PASSES),
+        deadline) == 0) {
+      return;
+    }
+    commands_.clear();
+    numWorkers_ -= hires;
+    for (int t = 0; t < search_.tasks(); ++t) {
+      int worker = search_.worker(t);
+      int cell = search_.cell(t);
+      if (worker == -1) {
+        hire(cell / boardSize_, cell % boardSize_);
+      } else {
+        idleWorkers_.remove(worker);
+        moveToward(worker, cell / boardSize_, cell % boardSize_);
+      }
+    }
+    for (int k = 0; k < search_.idle(); ++k) {
+      int worker = search_.idleWorker(k);
+      if (!idleWorkers_.contains(worker)) {
+        idleWorkers_.add(worker, workerRow_[worker], workerCol_[worker]);
+      }
+    }
+  }
+
+  // Lets RolloutPlanner veto today's last hire.
+  private void lookAhead(int[] snowFalls) {
+    rollout_.record(snowFalls);
+    int hires = 0;
+    int lastHire = -1;
+    for (int i = 0; i < commands_.size(); ++i) {
+      if (commands_.op(i) == CommandBuffer.HIRE) {
+        hires++;
+        lastHire = i;
+      }
+    }
+    if (rollout_.dropLastHire(snow_, workerRow_, workerCol_,
+        numWorkers_ - hires, commands_, hires, Fixed.DAYS - day_ + 1)) {
+      commands_.remove(lastHire);
+      System.arraycopy(commandTarget_, lastHire + 1, commandTarget_, lastHire,
+          commands_.size() - lastHire);
+      numWorkers_--;
+    }
+  }
+
+  private void applyCommands(int from) {
+    for (int i = from; i < commands_.size(); ++i) {
+      int id = commands_.id(i);
+      int row = commands_.row(i);
+      int col = commands_.col(i);
+      if (commands_.op(i) == CommandBuffer.MOVE) {
+        workers_.move(id, workerRow_[id], workerCol_[id], row, col);
+        territories_.move(id, row, col);
+      } else {
+        workers_.place(id, row, col);
+        territories_.place(id, row, col);
       }
+      workerRow_[id] = row;
+      workerCol_[id] = col;
+      snow_.clear(row, col);
+      snowCells_.remove(row * boardSize_ + col);
     }
   }
 
+  // Snowed cells the last plan() call had to deal with.
+  public int snowLoad() {
+    return snowLoad_;
+  }
+
+  public int workerCount() {
+    return numWorkers_;
+  }
+
   public String[] nextDay(int[] snowFalls) {
+    return plan(snowFalls).toStrings();
+  }
+
+  // Same as nextDay, but leaves the commands in a buffer that is reused
+  // (and overwritten) on the next call.
+  public CommandBuffer plan(int[] snowFalls) {
     day_++;
-    slice = day_ / Fixed.DAYS_SLICE;
-    commands = new ArrayList<String>();
-    if (snowFine_ < salary_) {
-      return commands.toArray(new String[commands.size()]);
-    }
-    hiring_commands = new ArrayList<HireData>();
-    moving_commands = new ArrayList<MoveData>();
-    moved_workers = new int[100];
+    commands_.clear();
     int K = snowFalls.length / 2;
+    int newSnow = 0;
     for (int i = 0; i < K; ++i) {
       int row = snowFalls[2 * i];
       int col = snowFalls[2 * i + 1];
-      snowState_[row][col] = 1;
-      snowCells_.addLast(new Point(row, col));
+      if (!snow_.get(row, col)) newSnow++;
+      snow_.set(row, col);
+      snowCells_.add(row * boardSize_ + col);
+    }
+    hiring_.startDay(day_, newSnow);
+    snowLoad_ = snowCells_.size();
+    // A worker under fresh snow is busy cleaning it today.
+    for (int row = 0; row < boardSize_; ++row) {
+      long busy = snow_.row(row) & workers_.occupancy().row(row);
+      for (; busy != 0; busy &= busy - 1) {
+        int col = Long.numberOfTrailingZeros(busy);
+        for (int id = workers_.first(row, col); id != -1;
+            id = workers_.next(id)) {
+          idleWorkers_.remove(id);
+        }
+      }
+    }
+    int open = 0;
+    for (int i = 0; i < snowCells_.size(); ++i) {
+      int cell = snowCells_.get(i);
+      if (!workers_.occupied(cell / boardSize_, cell % boardSize_)) {
+        openCells_[open++] = cell;
+      }
     }
-    for (Point p : snowCells_) {
-      processSnowCell(p.row, p.col);
+    engine_.assign(openCells_, open, assigned_);
+    for (int k = 0; k < open; ++k) {
+      processSnowCell(openCells_[k] / boardSize_, openCells_[k] % boardSize_,
+          assigned_[k]);
     }
-    for (HireData hire_data : hiring_commands) {
-      workerState_[hire_data.row][hire_data.col] = hire_data.id;
-      snowState_[hire_data.row][hire_data.col] = 0;
-      snowCells_.remove(new Point(hire_data.row, hire_data.col));
+    if (Fixed.SEARCH) {
+      improvePlan();
     }
-    for (MoveData move_data : moving_commands) {
-      workerState_[move_data.start_row][move_data.start_col] = -1;
-      workerState_[move_data.end_row][move_data.end_col] = move_data.id;
-      snowState_[move_data.end_row][move_data.end_col] = 0;
-      snowCells_.remove(new Point(move_data.end_row, move_data.end_col));
+    if (Fixed.LOOKAHEAD) {
+      lookAhead(snowFalls);
     }
-    return commands.toArray(new String[commands.size()]);
+    applyCommands(0);
+    if (Fixed.FORECAST) {
+      forecast_.observe(snowFalls);
+      int planned = commands_.size();
+      prePosition();
+      applyCommands(planned);
+    }
+    // Workers that stayed put clear the snow under them at the end of the day.
+    // This walks snowCells_ rather than the bitboards because the order its
+    // swap-removal leaves behind decides tomorrow's planning order.
+    for (int i = snowCells_.size() - 1; i >= 0; --i) {
+      int cell = snowCells_.get(i);
+      int row = cell / boardSize_;
+      int col = cell % boardSize_;
+      if (workers_.occupied(row, col)) {
+        snow_.clear(row, col);
+        snowCells_.remove(cell);
+      }
+    }
+    for (int id = 0; id < numWorkers_; ++id) {
+      idleWorkers_.add(id, workerRow_[id], workerCol_[id]);
+    }
+    return commands_;
   }
 
+  // Pass -binary to use the visualizer's binary framing: 4-byte header
+  // fields, then per day a 2-byte count and one byte per coordinate.
+  // Pass -csv <file> to dump per-day latency and load.
   public static void main(String[] args) {
+    boolean binary = false;
+    String csvFile = null;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-binary")) {
+        binary = true;
+      } else if (args[i].equals("-csv") && i + 1 < args.length) {
+        csvFile = args[++i];
+      }
+    }
     try {
-      BufferedReader in = new BufferedReader(
-          new InputStreamReader(System.in));
-      int boardSize = Integer.parseInt(in.readLine());
-      int salary = Integer.parseInt(in.readLine());
-      int snowFine = Integer.parseInt(in.readLine());
+      InputReader in = new InputReader(System.in, 1 << 16);
+      int boardSize = binary ? in.readInt32() : in.readInt();
+      int salary = binary ? in.readInt32() : in.readInt();
+      int snowFine = binary ? in.readInt32() : in.readInt();
 
       SnowCleaning cleaner = new SnowCleaning();
+      DayStats stats = new DayStats(2000);
+      CommandWriter out = new CommandWriter(System.out, binary, 1 << 16);
 
       long duration = 0;
       long startTime = System.nanoTime();
@@ -222,24 +2271,29 @@ class SnowCleaning {
       duration += (endTime - startTime);
 
       for (int t = 0; t < 2000; ++t) {
-        int snowCnt = Integer.parseInt(in.readLine());
+        int snowCnt = binary ? in.readShort() : in.readInt();
         int[] snowFalls = new int[2 * snowCnt];
         for (int i = 0; i < 2 * snowCnt; ++i) {
-          snowFalls[i] = Integer.parseInt(in.readLine());
+          snowFalls[i] = binary ? in.read() : in.readInt();
         }
 
         startTime = System.nanoTime();
-        String[] ret = cleaner.nextDay(snowFalls);
+        CommandBuffer ret = cleaner.plan(snowFalls);
         endTime = System.nanoTime();
         duration += (endTime - startTime);
+        stats.record(endTime - startTime, cleaner.snowLoad(),
+            cleaner.workerCount(), ret.size());
 
-        System.out.println(ret.length);
-        for (int i = 0; i < ret.length; ++i) {
-          System.out.println(ret[i]);
-        }
+        out.write(ret);
+        out.flush();
       }
-      System.out.flush();
       System.err.println("Duration: " + duration / 1e9);
+      System.err.println(stats.summary());
+      if (csvFile != null) {
+        PrintStream csv = new PrintStream(new FileOutputStream(csvFile));
+        stats.writeCsv(csv);
+        csv.close();
+      }
     } catch (Exception e) {}
   }
 }
@@ -4,13 +4,34 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.SecureRandom;
+import javax.imageio.ImageIO;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 class Constants {
     public static final int SIMULATION_TIME = 2000;
@@ -65,32 +86,6 @@ class CloudType {
     }
 }
 
-class Cell implements Comparable<Cell> {
-    public int r, c;
-
-    public Cell(int r, int c) {
-        this.r = r;
-        this.c = c;
-    }
-
-    public boolean equals(Object other) {
-        if (!(other instanceof Cell)) {
-            return false;
-        }
-
-        Cell otherCell = (Cell) other;
-        return this.r == otherCell.r && this.c == otherCell.c;
-    }
-
-    public int hashCode() {
-        return 100 * r + c;
-    }
-
-    public int compareTo(Cell other) {
-        return (r == other.r ? c - other.c : r - other.r);
-    }
-}
-
 class TestCase {
     public static final int MIN_CLOUD_TYPES = 1;
     public static final int MAX_CLOUD_TYPES = 10;
@@ -116,7 +111,19 @@ class TestCase {
 
     public int cloudCnt;
 
-    Set<Cell>[] snowFalls = new Set[Constants.SIMULATION_TIME];
+    /** Cells snowed on each day, packed as row * boardSize + col, sorted and without duplicates. */
+    int[][] snowFalls = new int[Constants.SIMULATION_TIME][];
+
+    protected TestCase(int boardSize, int salary, int snowFine) {
+        this.boardSize = boardSize;
+        this.salary = salary;
+        this.snowFine = snowFine;
+    }
+
+    /** Snow falling on day t, packed as row * boardSize + col and sorted by row and then column. */
+    public int[] getSnowFalls(int t) {
+        return snowFalls[t];
+    }
 
     public TestCase(long seed) {
         SecureRandom rnd = null;
@@ -142,9 +149,8 @@ class TestCase {
 
         cloudCnt = rnd.nextInt(MAX_CLOUD_COUNT - MIN_CLOUD_COUNT + 1) + MIN_CLOUD_COUNT;
 
-        for (int t = 0; t < Constants.SIMULATION_TIME; t++) {
-            snowFalls[t] = new HashSet<Cell>();
-        }
+        int[][] raw = new int[Constants.SIMULATION_TIME][8];
+        int[] rawCnt = new int[Constants.SIMULATION_TIME];
 
         for (int i = 0; i < cloudCnt; i++) {
             int type = rnd.nextInt(cloudTypeCnt);
@@ -161,7 +167,10 @@ class TestCase {
                                 int snowR = curRow + r - cloudTypes[type].size;
                                 int snowC = curCol + c - cloudTypes[type].size;
                                 if (snowR >= 0 && snowR < boardSize && snowC >= 0 && snowC < boardSize) {
-                                    snowFalls[t].add(new Cell(snowR, snowC));
+                                    if (rawCnt[t] == raw[t].length) {
+                                        raw[t] = Arrays.copyOf(raw[t], 2 * rawCnt[t]);
+                                    }
+                                    raw[t][rawCnt[t]++] = snowR * boardSize + snowC;
                                 }
                             }
                         }
@@ -172,6 +181,519 @@ class TestCase {
                 curCol += Constants.DC[dir];
             }
         }
+
+        // Dedupe and sort each day through one bitset over the board; packed indices sort like Cells.
+        long[] bits = new long[(boardSize * boardSize + 63) / 64];
+        for (int t = 0; t < Constants.SIMULATION_TIME; t++) {
+            int cnt = 0;
+            for (int i = 0; i < rawCnt[t]; i++) {
+                int cell = raw[t][i];
+                long mask = 1L << cell;
+                if ((bits[cell >>> 6] & mask) == 0) {
+                    bits[cell >>> 6] |= mask;
+                    cnt++;
+                }
+            }
+            int[] day = new int[cnt];
+            int pos = 0;
+            for (int w = 0; w < bits.length && pos < cnt; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    day[pos++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+                bits[w] = 0;
+            }
+            snowFalls[t] = day;
+        }
+    }
+}
+
+/**
+ * Snowfall for a range of seeds stored in one file so tuning runs can skip generation. Layout
+ * (big-endian): magic, version, first seed (long), seed count, one long offset per seed, then per
+ * seed its boardSize, salary and snowFine, SIMULATION_TIME + 1 cumulative day offsets and one
+ * short per snow cell (row * boardSize + col, sorted within each day). Records are memory-mapped
+ * on load, so parallel evaluators share the same pages.
+ */
+class TestCaseCorpus {
+    private static final int MAGIC = 0x534e4f57;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private final File file;
+    private final long firstSeed;
+    private final int seedCnt;
+    private final long[] offsets;
+
+    public TestCaseCorpus(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a snowfall corpus: " + file);
+            }
+            firstSeed = header.getLong();
+            seedCnt = header.getInt();
+            offsets = new long[seedCnt + 1];
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 8L * seedCnt);
+            for (int i = 0; i < seedCnt; i++) {
+                offsets[i] = index.getLong();
+            }
+            offsets[seedCnt] = channel.size();
+        } finally {
+            raf.close();
+        }
+    }
+
+    public boolean contains(long seed) {
+        return seed >= firstSeed && seed < firstSeed + seedCnt;
+    }
+
+    public TestCase load(long seed) throws IOException {
+        int i = (int) (seed - firstSeed);
+        // the mapping stays valid once the file is closed
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new MappedTestCase(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offsets[i],
+                    offsets[i + 1] - offsets[i]));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public static void write(File file, long firstSeed, long lastSeed) throws IOException {
+        if (lastSeed < firstSeed || lastSeed - firstSeed >= Integer.MAX_VALUE / 8) {
+            throw new IllegalArgumentException("Invalid corpus seed range " + firstSeed + "-" + lastSeed + ".");
+        }
+        int seedCnt = (int) (lastSeed - firstSeed + 1);
+        long[] offsets = new long[seedCnt];
+        long pos = HEADER_SIZE + 8L * seedCnt;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(firstSeed);
+            out.writeInt(seedCnt);
+            for (int i = 0; i < seedCnt; i++) {
+                out.writeLong(0);
+            }
+            for (int i = 0; i < seedCnt; i++) {
+                TestCase tc = new TestCase(firstSeed + i);
+                offsets[i] = pos;
+                out.writeInt(tc.boardSize);
+                out.writeInt(tc.salary);
+                out.writeInt(tc.snowFine);
+                int total = 0;
+                out.writeInt(total);
+                for (int t = 0; t < Constants.SIMULATION_TIME; t++) {
+                    total += tc.getSnowFalls(t).length;
+                    out.writeInt(total);
+                }
+                for (int t = 0; t < Constants.SIMULATION_TIME; t++) {
+                    for (int cell : tc.getSnowFalls(t)) {
+                        out.writeShort(cell);
+                    }
+                }
+                pos += 12 + 4L * (Constants.SIMULATION_TIME + 1) + 2L * total;
+            }
+        } finally {
+            out.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(HEADER_SIZE);
+            for (int i = 0; i < seedCnt; i++) {
+                raf.writeLong(offsets[i]);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
+
+/** A test case read from a memory-mapped corpus record; day inputs are decoded on demand. */
+class MappedTestCase extends TestCase {
+    private static final int CELLS_START = 12 + 4 * (Constants.SIMULATION_TIME + 1);
+
+    private final MappedByteBuffer record;
+
+    public MappedTestCase(MappedByteBuffer record) {
+        super(record.getInt(0), record.getInt(4), record.getInt(8));
+        this.record = record;
+    }
+
+    public int[] getSnowFalls(int t) {
+        int from = record.getInt(12 + 4 * t);
+        int to = record.getInt(12 + 4 * (t + 1));
+        int[] res = new int[to - from];
+        for (int i = from; i < to; i++) {
+            res[i - from] = record.getShort(CELLS_START + 2 * i);
+        }
+        return res;
+    }
+}
+
+/**
+ * Draws snapshots into a reusable image. Only cells whose state (empty, snow or worker) changed
+ * since the previous render are repainted; the grid is drawn once.
+ */
+class FrameRenderer {
+    private static final byte EMPTY = 0, SNOW = 1, WORKER = 2;
+    private static final Color[] COLORS = {Color.DARK_GRAY, Color.WHITE, Color.BLUE};
+    private static final Font FOOTER_FONT = new Font("Arial", Font.BOLD, 12);
+
+    public final BufferedImage image;
+    private final Graphics2D g;
+    private final int boardSize, cellSize;
+    private final byte[] drawn, state;
+
+    public FrameRenderer(int boardSize, int cellSize, int footerHeight) {
+        this.boardSize = boardSize;
+        this.cellSize = cellSize;
+        int side = cellSize * boardSize + 1;
+        image = new BufferedImage(side, side + footerHeight, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(0, 0, side, side);
+        g.setColor(Color.RED);
+        for (int i = 0; i <= boardSize; i++) {
+            g.drawLine(i * cellSize, 0, i * cellSize, cellSize * boardSize);
+            g.drawLine(0, i * cellSize, cellSize * boardSize, i * cellSize);
+        }
+        drawn = new byte[boardSize * boardSize];
+        state = new byte[boardSize * boardSize];
+    }
+
+    public void render(WorldSnapshot snap) {
+        for (int i = 0; i < boardSize; i++) {
+            for (int j = 0; j < boardSize; j++) {
+                state[i * boardSize + j] = snap.haveSnow[i][j] ? SNOW : EMPTY;
+            }
+        }
+        for (int i = 0; i < snap.workerCnt; i++) {
+            state[snap.workerR[i] * boardSize + snap.workerC[i]] = WORKER;
+        }
+        for (int cell = 0; cell < state.length; cell++) {
+            if (state[cell] != drawn[cell]) {
+                drawn[cell] = state[cell];
+                g.setColor(COLORS[state[cell]]);
+                g.fillRect((cell % boardSize) * cellSize + 1, (cell / boardSize) * cellSize + 1, cellSize - 2, cellSize - 2);
+            }
+        }
+        int side = cellSize * boardSize + 1;
+        if (image.getHeight() > side) {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, side, image.getWidth(), image.getHeight() - side);
+            g.setColor(Color.WHITE);
+            g.setFont(FOOTER_FONT);
+            g.drawString("Day " + snap.curDay + "  snow " + snap.snowCnt + "  workers " + snap.workerCnt
+                    + "  score " + (snap.totFine + snap.totSalary), 4, side + 14);
+        }
+    }
+}
+
+/** Writes PNG frames of a run every few days without opening a window. */
+class FrameExporter {
+    private final World world;
+    private final WorldSnapshot snap;
+    private final FrameRenderer renderer;
+    private final File dir;
+    private final int every;
+
+    public FrameExporter(World world, int cellSize, File dir, int every) {
+        this.world = world;
+        this.dir = dir;
+        this.every = every;
+        snap = world.newSnapshot();
+        renderer = new FrameRenderer(world.haveSnow.length, cellSize, 20);
+        dir.mkdirs();
+    }
+
+    public void onDayEnd() throws IOException {
+        if (world.curDay % every != 0 && world.curDay != Constants.SIMULATION_TIME - 1) {
+            return;
+        }
+        world.fillSnapshot(snap);
+        renderer.render(snap);
+        ImageIO.write(renderer.image, "png", new File(dir, String.format("day%04d.png", world.curDay)));
+    }
+}
+
+/**
+ * Append-only binary log of one run. After the header (magic, version, seed, boardSize, salary,
+ * snowFine, checkpoint period) come records tagged by one byte:
+ * 'D' day, snowfall cells (short count + shorts), commands (short count + op/a/b bytes) and the
+ * world counters at the end of the day;
+ * 'C' day, total fine and salary, and the full end-of-day state (snow bitset, workers) every
+ * checkpoint period;
+ * 'E' the checkpoint index (count, then day and file offset pairs).
+ * The last 8 bytes hold the offset of the 'E' record.
+ */
+class RunLogWriter {
+    static final int MAGIC = 0x53434c47;
+    static final int VERSION = 1;
+
+    private final DataOutputStream out;
+    private final int boardSize;
+    private final int checkpointEvery;
+    private long pos;
+
+    private byte[] commands = new byte[3 * 2 * Constants.MAX_WORKERS];
+    private int commandCnt;
+    private final List<long[]> checkpoints = new ArrayList<long[]>();
+
+    public RunLogWriter(File file, long seed, int boardSize, int salary, int snowFine, int checkpointEvery)
+            throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        this.boardSize = boardSize;
+        this.checkpointEvery = checkpointEvery;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(seed);
+        out.writeInt(boardSize);
+        out.writeInt(salary);
+        out.writeInt(snowFine);
+        out.writeInt(checkpointEvery);
+        pos = 32;
+    }
+
+    /** Adds a batch of commands already packed the way the log stores them. */
+    public void addCommands(byte[] batch, int count) {
+        while (3 * commandCnt + 3 * count > commands.length) {
+            commands = Arrays.copyOf(commands, 2 * commands.length);
+        }
+        System.arraycopy(batch, 0, commands, 3 * commandCnt, 3 * count);
+        commandCnt += count;
+    }
+
+    public void endDay(World world, int[] snowFalls) throws IOException {
+        out.writeByte('D');
+        out.writeInt(world.curDay);
+        out.writeShort(snowFalls.length);
+        for (int cell : snowFalls) {
+            out.writeShort(cell);
+        }
+        out.writeShort(commandCnt);
+        out.write(commands, 0, 3 * commandCnt);
+        out.writeInt(world.snowCnt);
+        out.writeInt(world.workerCnt);
+        out.writeInt(world.totFine);
+        out.writeInt(world.totSalary);
+        pos += 1 + 4 + 2 + 2 * snowFalls.length + 2 + 3 * commandCnt + 16;
+        commandCnt = 0;
+
+        if ((world.curDay + 1) % checkpointEvery == 0) {
+            checkpoints.add(new long[]{world.curDay, pos});
+            out.writeByte('C');
+            out.writeInt(world.curDay);
+            out.writeInt(world.totFine);
+            out.writeInt(world.totSalary);
+            long[] bits = new long[(boardSize * boardSize + 63) / 64];
+            for (int r = 0; r < boardSize; r++) {
+                for (int c = 0; c < boardSize; c++) {
+                    if (world.haveSnow[r][c]) {
+                        bits[(r * boardSize + c) >>> 6] |= 1L << (r * boardSize + c);
+                    }
+                }
+            }
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+            out.writeShort(world.workerCnt);
+            for (int i = 0; i < world.workerCnt; i++) {
+                out.writeByte(world.workerR[i]);
+                out.writeByte(world.workerC[i]);
+            }
+            pos += 1 + 12 + 8 * bits.length + 2 + 2 * world.workerCnt;
+        }
+    }
+
+    public void close() throws IOException {
+        out.writeByte('E');
+        out.writeInt(checkpoints.size());
+        for (long[] checkpoint : checkpoints) {
+            out.writeInt((int) checkpoint[0]);
+            out.writeLong(checkpoint[1]);
+        }
+        out.writeLong(pos);
+        out.close();
+    }
+}
+
+/** Reads a run log: rebuilds any day's world from the nearest checkpoint, or walks the day records. */
+class RunLogReader {
+    public final long seed;
+    public final int boardSize, salary, snowFine;
+
+    private final RandomAccessFile file;
+    private final int[] checkpointDays;
+    private final long[] checkpointOffsets;
+    private final long endOffset;
+
+    /** Counters and commands of the last day read by nextDay. */
+    public int day, snowCnt, workerCnt, totFine, totSalary;
+    public int[] snowFalls = new int[0];
+    public int commandCnt;
+    public byte[] commands = new byte[0];
+
+    private DataInputStream in;
+
+    public RunLogReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        if (file.readInt() != RunLogWriter.MAGIC || file.readInt() != RunLogWriter.VERSION) {
+            throw new IOException("Not a run log: " + path);
+        }
+        seed = file.readLong();
+        boardSize = file.readInt();
+        salary = file.readInt();
+        snowFine = file.readInt();
+        file.readInt();
+        file.seek(file.length() - 8);
+        endOffset = file.readLong();
+        file.seek(endOffset + 1);
+        int cnt = file.readInt();
+        checkpointDays = new int[cnt];
+        checkpointOffsets = new long[cnt];
+        for (int i = 0; i < cnt; i++) {
+            checkpointDays[i] = file.readInt();
+            checkpointOffsets[i] = file.readLong();
+        }
+        seekTo(32);
+    }
+
+    private void seekTo(long offset) throws IOException {
+        file.seek(offset);
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.getFD()), 1 << 16));
+    }
+
+    /** Reads the next day record, skipping checkpoints; returns false at the end of the log. */
+    public boolean nextDay() throws IOException {
+        while (true) {
+            int tag = in.readUnsignedByte();
+            if (tag == 'E') {
+                return false;
+            }
+            if (tag == 'C') {
+                in.skipBytes(12 + 8 * ((boardSize * boardSize + 63) / 64));
+                in.skipBytes(2 * in.readUnsignedShort());
+                continue;
+            }
+            day = in.readInt();
+            snowFalls = new int[in.readUnsignedShort()];
+            for (int i = 0; i < snowFalls.length; i++) {
+                snowFalls[i] = in.readUnsignedShort();
+            }
+            commandCnt = in.readUnsignedShort();
+            if (commands.length < 3 * commandCnt) {
+                commands = new byte[3 * commandCnt];
+            }
+            in.readFully(commands, 0, 3 * commandCnt);
+            snowCnt = in.readInt();
+            workerCnt = in.readInt();
+            totFine = in.readInt();
+            totSalary = in.readInt();
+            return true;
+        }
+    }
+
+    /** Rebuilds the world as it was at the end of the given day (0-based). */
+    public World worldAt(int targetDay) throws IOException {
+        World world = new World(boardSize, salary, snowFine);
+        int k = -1;
+        for (int i = 0; i < checkpointDays.length && checkpointDays[i] <= targetDay; i++) {
+            k = i;
+        }
+        if (k < 0) {
+            seekTo(32);
+        } else {
+            seekTo(checkpointOffsets[k]);
+            in.readUnsignedByte();
+            world.curDay = in.readInt();
+            world.totFine = in.readInt();
+            world.totSalary = in.readInt();
+            for (int cell = 0; cell < boardSize * boardSize; cell += 64) {
+                long word = in.readLong();
+                for (int b = 0; b < 64 && cell + b < boardSize * boardSize; b++) {
+                    if ((word >>> b & 1) != 0) {
+                        world.addSnow((cell + b) / boardSize, (cell + b) % boardSize);
+                    }
+                }
+            }
+            int workers = in.readUnsignedShort();
+            for (int i = 0; i < workers; i++) {
+                world.placeWorker(in.readUnsignedByte(), in.readUnsignedByte());
+            }
+        }
+        while (world.curDay < targetDay && nextDay()) {
+            world.startNewDay();
+            for (int cell : snowFalls) {
+                world.addSnow(cell / boardSize, cell % boardSize);
+            }
+            world.applyCommands(commands, commandCnt);
+            world.cleanAllSnow();
+            world.updateTotalFine();
+            world.updateTotalSalary();
+        }
+        return world;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /** Walks two logs of the same seed day by day and reports the first day their score differs. */
+    public static void diff(File a, File b) throws IOException {
+        RunLogReader x = new RunLogReader(a);
+        RunLogReader y = new RunLogReader(b);
+        if (x.seed != y.seed) {
+            System.out.println("WARNING: logs are for different seeds (" + x.seed + " and " + y.seed + ").");
+        }
+        while (true) {
+            boolean hasX = x.nextDay();
+            boolean hasY = y.nextDay();
+            if (!hasX || !hasY) {
+                System.out.println(hasX == hasY ? "Logs are identical on every day."
+                        : "Logs are identical until one of them ends after day " + (hasX ? y.day : x.day) + ".");
+                break;
+            }
+            if (x.totFine != y.totFine || x.totSalary != y.totSalary || x.workerCnt != y.workerCnt || x.snowCnt != y.snowCnt
+                    || !sameCommands(x, y)) {
+                System.out.println("First divergence on day " + x.day + ":");
+                x.printDay("A");
+                y.printDay("B");
+                break;
+            }
+        }
+        x.close();
+        y.close();
+    }
+
+    private static boolean sameCommands(RunLogReader x, RunLogReader y) {
+        if (x.commandCnt != y.commandCnt) {
+            return false;
+        }
+        for (int i = 0; i < 3 * x.commandCnt; i++) {
+            if (x.commands[i] != y.commands[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void printDay(String name) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append(": snow = ").append(snowCnt).append(", workers = ").append(workerCnt)
+                .append(", fine = ").append(totFine).append(", salary = ").append(totSalary).append(", commands =");
+        for (int i = 0; i < commandCnt; i++) {
+            sb.append(' ').append((char) commands[3 * i]).append(' ').append(commands[3 * i + 1] & 0xff).append(' ');
+            sb.append(commands[3 * i] == 'H' ? String.valueOf(commands[3 * i + 2] & 0xff)
+                    : String.valueOf(Constants.DIR_STR.charAt(commands[3 * i + 2])));
+            sb.append(';');
+        }
+        System.out.println(sb);
     }
 }
 
@@ -181,6 +703,8 @@ class Drawer extends JFrame {
 
     public World world;
     public DrawerPanel panel;
+    private WorldSnapshot front;
+    private FrameRenderer renderer;
 
     public int cellSize, boardSize;
     public int width, height;
@@ -201,29 +725,12 @@ class Drawer extends JFrame {
 
     class DrawerPanel extends JPanel {
         public void paint(Graphics g) {
-            g.setColor(Color.DARK_GRAY);
-            g.fillRect(15, 15, cellSize * boardSize + 1, cellSize * boardSize + 1);
-            g.setColor(Color.RED);
-            for (int i = 0; i <= boardSize; i++) {
-                g.drawLine(15 + i * cellSize, 15, 15 + i * cellSize, 15 + cellSize * boardSize);
-                g.drawLine(15, 15 + i * cellSize, 15 + cellSize * boardSize, 15 + i * cellSize);
-            }
-
-            g.setColor(Color.WHITE);
-            for (int i=0; i < boardSize; i++) {
-                for (int j=0; j < boardSize; j++) {
-                    if (world.haveSnow[i][j]) {
-                        g.fillRect(15 + j * cellSize + 1, 15 + i * cellSize + 1, cellSize - 2, cellSize - 2);
-                    }
-                }
-            }
+            WorldSnapshot snap = world.latestSnapshot(front);
+            front = snap;
 
-            g.setColor(Color.BLUE);
-            synchronized (world.workersLock) {
-                for (Cell worker : world.workers) {
-                    g.fillRect(15 + worker.c * cellSize + 1, 15 + worker.r * cellSize + 1, cellSize - 2, cellSize - 2);
-                }
-            }
+            super.paint(g);
+            renderer.render(snap);
+            g.drawImage(renderer.image, 15, 15, null);
 
             g.setColor(Color.BLACK);
             g.setFont(new Font("Arial", Font.BOLD, 12));
@@ -235,17 +742,15 @@ class Drawer extends JFrame {
             g2.drawString("Snow fine = " + world.fine, horPos, 50);
             g2.drawString("Salary = " + world.salary, horPos, 70);
 
-            g2.drawString("Day = " + world.curDay, horPos, 105);
-            g2.drawString("Uncleared snow cells = " + world.snowCnt, horPos, 125);
-            synchronized (world.workersLock) {
-                g2.drawString("Workers = " + world.workers.size(), horPos, 145);
-            }
+            g2.drawString("Day = " + snap.curDay, horPos, 105);
+            g2.drawString("Uncleared snow cells = " + snap.snowCnt, horPos, 125);
+            g2.drawString("Workers = " + snap.workerCnt, horPos, 145);
             g2.drawString("Total snow fine = ", horPos, 180);
-            g2.drawString("" + world.totFine, horPos + 100, 180);
+            g2.drawString("" + snap.totFine, horPos + 100, 180);
             g2.drawString("Total salary = ", horPos, 200);
-            g2.drawString("" + world.totSalary, horPos + 100, 200);
+            g2.drawString("" + snap.totSalary, horPos + 100, 200);
             g2.drawString("Current score = ", horPos, 220);
-            g2.drawString("" + (world.totFine + world.totSalary), horPos + 100, 220);
+            g2.drawString("" + (snap.totFine + snap.totSalary), horPos + 100, 220);
         }
     }
 
@@ -284,9 +789,11 @@ class Drawer extends JFrame {
         addWindowListener(new DrawerWindowListener());
 
         this.world = world;
+        front = world.newSnapshot();
 
         boardSize = world.haveSnow.length;
         this.cellSize = cellSize;
+        renderer = new FrameRenderer(boardSize, cellSize, 0);
         width = cellSize * boardSize + EXTRA_WIDTH;
         height = cellSize * boardSize + EXTRA_HEIGHT;
 
@@ -300,14 +807,43 @@ class Drawer extends JFrame {
     }
 }
 
+/** Copy of the world's drawable state at the end of a day. */
+class WorldSnapshot {
+    long seq;
+    int curDay, snowCnt, workerCnt;
+    int totSalary, totFine;
+    final boolean[][] haveSnow;
+    final int[] workerR = new int[Constants.MAX_WORKERS];
+    final int[] workerC = new int[Constants.MAX_WORKERS];
+
+    WorldSnapshot(int boardSize) {
+        haveSnow = new boolean[boardSize][boardSize];
+    }
+}
+
 class World {
-    final Object workersLock = new Object();
+    // Triple buffering: the simulation fills 'back' and swaps it with 'published'; a reader swaps its
+    // own buffer with 'published' whenever that one is newer. Nobody ever writes a buffer someone
+    // else holds, so neither side waits for the other.
+    private WorldSnapshot back;
+    private final AtomicReference<WorldSnapshot> published;
+    private long publishedSeq;
 
     int snowCnt;
     boolean[][] haveSnow;
 
-    List<Cell> workers = new ArrayList<Cell>();
-    Set<Integer> usedWorkers = new HashSet<Integer>();
+    int workerCnt;
+    final int[] workerR = new int[Constants.MAX_WORKERS];
+    final int[] workerC = new int[Constants.MAX_WORKERS];
+    // A worker is used this turn iff its stamp equals the current one, so a new day is one increment.
+    private final int[] usedStamp = new int[Constants.MAX_WORKERS];
+    private int stamp = 1;
+    // Workers standing on each cell (r * n + c), and the cells that got snow since the day started:
+    // snow can only be under a worker if it fell there today, so that is all cleanAllSnow looks at.
+    private final int[] workersAt;
+    private int[] newSnow = new int[64];
+    private int newSnowCnt;
+    private String error = "";
 
     int salary, fine;
     int totSalary, totFine;
@@ -317,12 +853,50 @@ class World {
         this.salary = salary;
         this.fine = fine;
         haveSnow = new boolean[boardSize][boardSize];
+        workersAt = new int[boardSize * boardSize];
+        back = newSnapshot();
+        published = new AtomicReference<WorldSnapshot>(newSnapshot());
     }
 
-    public void updateTotalSalary() {
-        synchronized (workersLock) {
-            totSalary += salary * workers.size();
+    public WorldSnapshot newSnapshot() {
+        WorldSnapshot snap = new WorldSnapshot(haveSnow.length);
+        snap.seq = -1;
+        return snap;
+    }
+
+    /** Publishes the current state for readers; called by the simulation thread only. */
+    public void publishSnapshot() {
+        fillSnapshot(back);
+        back.seq = ++publishedSeq;
+        back = published.getAndSet(back);
+    }
+
+    public void fillSnapshot(WorldSnapshot snap) {
+        snap.curDay = curDay;
+        snap.snowCnt = snowCnt;
+        snap.totSalary = totSalary;
+        snap.totFine = totFine;
+        for (int i = 0; i < haveSnow.length; i++) {
+            System.arraycopy(haveSnow[i], 0, snap.haveSnow[i], 0, haveSnow.length);
+        }
+        snap.workerCnt = workerCnt;
+        System.arraycopy(workerR, 0, snap.workerR, 0, workerCnt);
+        System.arraycopy(workerC, 0, snap.workerC, 0, workerCnt);
+    }
+
+    /**
+     * Returns the newest published snapshot, handing 'current' (the caller's previous snapshot) back
+     * in exchange, or 'current' itself if nothing newer was published. Single reader only.
+     */
+    public WorldSnapshot latestSnapshot(WorldSnapshot current) {
+        if (published.get().seq > current.seq) {
+            return published.getAndSet(current);
         }
+        return current;
+    }
+
+    public void updateTotalSalary() {
+        totSalary += salary * workerCnt;
     }
 
     public void updateTotalFine() {
@@ -333,6 +907,10 @@ class World {
         if (!haveSnow[r][c]) {
             snowCnt++;
             haveSnow[r][c] = true;
+            if (newSnowCnt == newSnow.length) {
+                newSnow = Arrays.copyOf(newSnow, 2 * newSnowCnt);
+            }
+            newSnow[newSnowCnt++] = r * haveSnow.length + c;
         }
     }
 
@@ -345,174 +923,886 @@ class World {
 
     public void startNewDay() {
         curDay++;
-        usedWorkers.clear();
+        stamp++;
+        newSnowCnt = 0;
+    }
+
+    /** Puts a worker on the board as restored from a checkpoint, without using up its turn. */
+    public void placeWorker(int r, int c) {
+        workerR[workerCnt] = r;
+        workerC[workerCnt] = c;
+        workerCnt++;
+        workersAt[r * haveSnow.length + c]++;
     }
 
     public String addWorker(int r, int c) {
-        synchronized (workersLock) {
-            if (workers.size() == Constants.MAX_WORKERS) {
-                return "You are allowed to have at most " + Constants.MAX_WORKERS + " workers.";
-            } else if (r < 0 || r >= haveSnow.length || c < 0 || c >= haveSnow.length) {
-                return "You are trying to hire a worker at a cell outside the board.";
-            } else {
-                workers.add(new Cell(r, c));
-                usedWorkers.add(workers.size() - 1);
-                removeSnow(r, c);
-                return "";
-            }
+        if (workerCnt == Constants.MAX_WORKERS) {
+            return "You are allowed to have at most " + Constants.MAX_WORKERS + " workers.";
+        } else if (r < 0 || r >= haveSnow.length || c < 0 || c >= haveSnow.length) {
+            return "You are trying to hire a worker at a cell outside the board.";
+        } else {
+            usedStamp[workerCnt] = stamp;
+            placeWorker(r, c);
+            removeSnow(r, c);
+            return "";
         }
     }
 
     public String moveWorker(int id, int dir) {
-        synchronized (workersLock) {
-            if (id < 0 || id >= workers.size()) {
-                return "You are trying to move worker which does not exist.";
-            } else if (usedWorkers.contains(id)) {
-                return "You are trying to execute a command for some worker more than once during the same turn.";
-            } else {
-                Cell worker = workers.get(id);
-                worker.r += Constants.DR[dir];
-                worker.c += Constants.DC[dir];
-                if (worker.r < 0 || worker.c < 0 || worker.r >= haveSnow.length || worker.c >= haveSnow.length) {
-                    return "You are trying to move a worker outside the board.";
-                }
-                removeSnow(worker.r, worker.c);
-                usedWorkers.add(id);
-                return "";
+        if (id < 0 || id >= workerCnt) {
+            return "You are trying to move worker which does not exist.";
+        } else if (usedStamp[id] == stamp) {
+            return "You are trying to execute a command for some worker more than once during the same turn.";
+        } else {
+            int n = haveSnow.length;
+            int r = workerR[id] + Constants.DR[dir];
+            int c = workerC[id] + Constants.DC[dir];
+            workerR[id] = r;
+            workerC[id] = c;
+            if (r < 0 || c < 0 || r >= n || c >= n) {
+                return "You are trying to move a worker outside the board.";
+            }
+            workersAt[(r - Constants.DR[dir]) * n + c - Constants.DC[dir]]--;
+            workersAt[r * n + c]++;
+            removeSnow(r, c);
+            usedStamp[id] = stamp;
+            return "";
+        }
+    }
+
+    /**
+     * Applies a day's commands packed as (op, a, b) byte triples, op being 'H' or 'M', exactly as the
+     * same sequence of addWorker/moveWorker calls would. Returns the index of the first rejected
+     * command, whose message is then in lastError(), or -1 if all of them were applied.
+     */
+    public int applyCommands(byte[] commands, int count) {
+        for (int i = 0; i < count; i++) {
+            int a = commands[3 * i + 1] & 0xff;
+            int b = commands[3 * i + 2] & 0xff;
+            error = commands[3 * i] == 'H' ? addWorker(a, b) : moveWorker(a, b);
+            if (error.length() > 0) {
+                return i;
             }
         }
+        return -1;
+    }
+
+    public String lastError() {
+        return error;
     }
 
     public void cleanAllSnow() {
-        synchronized (workersLock) {
-            for (Cell worker : workers) {
-                removeSnow(worker.r, worker.c);
+        int n = haveSnow.length;
+        for (int i = 0; i < newSnowCnt; i++) {
+            int cell = newSnow[i];
+            if (workersAt[cell] > 0) {
+                removeSnow(cell / n, cell % n);
             }
         }
     }
 }
 
-public class SnowCleaningVis {
-    public static String MOVE_REG_EXP = "M [1-9]?[0-9] [ULDR]";
-    public static String HIRE_REG_EXP = "H [1-9]?[0-9] [1-9]?[0-9]";
+/**
+ * Hand-written matcher for the worker command grammar, equivalent to the regular expressions
+ * "H [1-9]?[0-9] [1-9]?[0-9]" and "M [1-9]?[0-9] [ULDR]".
+ */
+class CommandParser {
+    public static final int HIRE = 0;
+    public static final int MOVE = 1;
 
-    public static String WRONG_COMMAND_ERROR = "ERROR: Each worker command must be formatted either \"M <ID> <DIR>\"" +
-            " or \"H <ROW> <COL>\". Here <ID>, <ROW> and <COL> are integers from 0 to 99 without leading zeros" +
-            " and <DIR> is one of 'U', 'L', 'D', 'R'.";
+    public int op;
+    public int a, b;
 
-    public static String execCommand = null;
-    public static long seed = 1;
-    public static boolean vis = true;
-    public static int cellSize = 12;
-    public static int delay = 100;
-    public static boolean startPaused = false;
+    public boolean parse(byte[] line, int len) {
+        if (len < 5 || line[1] != ' ') {
+            return false;
+        }
+        int pos = 2;
+        int first = 0;
+        int digits = 0;
+        while (pos < len && line[pos] >= '0' && line[pos] <= '9') {
+            first = first * 10 + (line[pos] - '0');
+            pos++;
+            digits++;
+        }
+        if (digits == 0 || digits > 2 || (digits == 2 && line[2] == '0') || pos >= len || line[pos] != ' ') {
+            return false;
+        }
+        pos++;
+        if (line[0] == 'M') {
+            if (pos + 1 != len) {
+                return false;
+            }
+            int dir = Constants.DIR_STR.indexOf(line[pos]);
+            if (dir < 0) {
+                return false;
+            }
+            op = MOVE;
+            a = first;
+            b = dir;
+            return true;
+        }
+        if (line[0] != 'H') {
+            return false;
+        }
+        int start = pos;
+        int second = 0;
+        while (pos < len && line[pos] >= '0' && line[pos] <= '9') {
+            second = second * 10 + (line[pos] - '0');
+            pos++;
+        }
+        digits = pos - start;
+        if (pos != len || digits == 0 || digits > 2 || (digits == 2 && line[start] == '0')) {
+            return false;
+        }
+        op = HIRE;
+        a = first;
+        b = second;
+        return true;
+    }
+}
 
-    public static Process solution;
+/**
+ * How runTest talks to a solution: send the test parameters, then each day's snowfall, and read
+ * back that day's commands one at a time.
+ */
+interface SolutionDriver {
+    void init(int boardSize, int salary, int snowFine) throws Exception;
 
-    public int runTest() {
-        solution = null;
+    /**
+     * Prepares the day's snowfall (day.snowFalls, cells packed as row * boardSize + col) for sendDay.
+     * Runs on the pipeline's writer thread, possibly days ahead, so it must not touch the solution.
+     */
+    void encode(DayPacket day);
 
-        try {
-            solution = Runtime.getRuntime().exec(execCommand);
-        } catch (Exception e) {
-            System.err.println("ERROR: Unable to execute your solution using the provided command: "
-                    + execCommand + ".");
-            return -1;
-        }
+    /** Hands an encoded day to the solution and returns the number of commands it issued. */
+    int sendDay(DayPacket day) throws Exception;
+
+    /** Reads the next command into the parser and returns ProtocolChannel.OK, READ_ERROR or FORMAT_ERROR. */
+    int readCommand(CommandParser parser);
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(solution.getInputStream()));
-        PrintWriter writer = new PrintWriter(solution.getOutputStream());
-        new ErrorStreamRedirector(solution.getErrorStream()).start();
+    void stop();
+}
 
-        TestCase tc = new TestCase(seed);
+/**
+ * One day on its way through the pipeline: the writer thread fills in the snowfall and its encoding,
+ * the solution thread the commands read back, and the scorer applies them to the world.
+ */
+class DayPacket {
+    final int t;
+    final int[] snowFalls;
+    byte[] input;
+    int inputLen;
+    int[] coords;
+
+    /** Whether the solution gave a command count, and the count. */
+    boolean counted;
+    int commandCnt;
+    /** Commands read, packed as (op, a, b) triples the way World.applyCommands takes them. */
+    byte[] commands;
+    int readCnt;
+    /** How reading stopped: ProtocolChannel.OK once all commands were read, else the failing read's status. */
+    int status = ProtocolChannel.OK;
+
+    DayPacket(int t, int[] snowFalls) {
+        this.t = t;
+        this.snowFalls = snowFalls;
+    }
+}
 
-        writer.println(tc.boardSize);
-        writer.println(tc.salary);
-        writer.println(tc.snowFine);
-        writer.flush();
+/**
+ * Bounded ring for exactly one producer and one consumer thread. A side that finds the ring full or
+ * empty spins for a while (on machines with more than one core) and then parks until the other side
+ * moves. After close(), put fails and take returns what is left and then null.
+ */
+class SpscQueue<T> {
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+    private final Object[] items;
+    private final int mask;
+    private volatile long head, tail;
+    private volatile boolean closed;
+    private volatile Thread parkedProducer, parkedConsumer;
+
+    public SpscQueue(int capacity) {
+        items = new Object[Integer.highestOneBit(capacity - 1) << 1];
+        mask = items.length - 1;
+    }
 
-        World world = new World(tc.boardSize, tc.salary, tc.snowFine);
-        Drawer drawer = null;
-        if (vis) {
-            drawer = new Drawer(world, cellSize);
-            if (startPaused) {
-                drawer.pauseMode = true;
+    public boolean put(T item) {
+        long t = tail;
+        for (int spins = SPINS; t - head == items.length && !closed; spins--) {
+            if (spins <= 0) {
+                parkedProducer = Thread.currentThread();
+                if (t - head == items.length && !closed) {
+                    LockSupport.park(this);
+                }
+                parkedProducer = null;
             }
         }
+        if (closed) {
+            return false;
+        }
+        items[(int) t & mask] = item;
+        tail = t + 1;
+        wake(parkedConsumer);
+        return true;
+    }
 
-        for (int t = 0; t < Constants.SIMULATION_TIME; t++) {
-            world.startNewDay();
-
-            int snowFallCnt = tc.snowFalls[t].size();
-            Cell[] snowFalls = new Cell[snowFallCnt];
-            int pos = 0;
-            for (Cell cell : tc.snowFalls[t]) {
-                snowFalls[pos++] = cell;
+    @SuppressWarnings("unchecked")
+    public T take() {
+        long h = head;
+        for (int spins = SPINS; h == tail && !closed; spins--) {
+            if (spins <= 0) {
+                parkedConsumer = Thread.currentThread();
+                if (h == tail && !closed) {
+                    LockSupport.park(this);
+                }
+                parkedConsumer = null;
             }
-            Arrays.sort(snowFalls);
+        }
+        if (h == tail) {
+            return null;
+        }
+        T item = (T) items[(int) h & mask];
+        items[(int) h & mask] = null;
+        head = h + 1;
+        wake(parkedProducer);
+        return item;
+    }
 
-            StringBuilder sb = new StringBuilder();
-            sb.append(snowFallCnt).append("\n");
-            for (int i=0; i < snowFallCnt; i++) {
-                sb.append(snowFalls[i].r).append("\n").append(snowFalls[i].c).append("\n");
-                world.addSnow(snowFalls[i].r, snowFalls[i].c);
-            }
+    public void close() {
+        closed = true;
+        wake(parkedProducer);
+        wake(parkedConsumer);
+    }
 
-            writer.print(sb.toString());
-            writer.flush();
+    public boolean isClosed() {
+        return closed;
+    }
 
-            int commandCnt;
-            try {
-                commandCnt = Integer.parseInt(reader.readLine());
+    private static void wake(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
+
+/**
+ * Runs a solution class inside the visualizer's JVM. The class needs a no-argument constructor and
+ * the same methods as SnowCleaning: int init(int, int, int) and String[] nextDay(int[]). They are
+ * looked up reflectively so the solution file stays self-contained. A parameter string (-config, or a
+ * tuner candidate) is passed to an optional void configure(String) before init.
+ */
+class InProcessSolution implements SolutionDriver {
+    private final Object solver;
+    private final Method initMethod;
+    private final Method nextDayMethod;
+
+    private int boardSize;
+    private String[] commands;
+    private int nextCommand;
+    private final byte[] line = new byte[10];
+
+    public InProcessSolution(String className, String config) throws Exception {
+        Class<?> cls = Class.forName(className);
+        Constructor<?> constructor = cls.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        solver = constructor.newInstance();
+        initMethod = cls.getDeclaredMethod("init", int.class, int.class, int.class);
+        initMethod.setAccessible(true);
+        nextDayMethod = cls.getDeclaredMethod("nextDay", int[].class);
+        nextDayMethod.setAccessible(true);
+        if (config != null) {
+            Method configure = cls.getDeclaredMethod("configure", String.class);
+            configure.setAccessible(true);
+            configure.invoke(solver, config);
+        }
+    }
+
+    public void init(int boardSize, int salary, int snowFine) throws Exception {
+        this.boardSize = boardSize;
+        initMethod.invoke(solver, boardSize, salary, snowFine);
+    }
+
+    public void encode(DayPacket day) {
+        int[] coords = new int[2 * day.snowFalls.length];
+        for (int i = 0; i < day.snowFalls.length; i++) {
+            coords[2 * i] = day.snowFalls[i] / boardSize;
+            coords[2 * i + 1] = day.snowFalls[i] % boardSize;
+        }
+        day.coords = coords;
+    }
+
+    public int sendDay(DayPacket day) throws Exception {
+        commands = (String[]) nextDayMethod.invoke(solver, (Object) day.coords);
+        nextCommand = 0;
+        return commands.length;
+    }
+
+    public int readCommand(CommandParser parser) {
+        String command = commands[nextCommand++];
+        if (command == null || command.length() > line.length) {
+            return ProtocolChannel.FORMAT_ERROR;
+        }
+        for (int i = 0; i < command.length(); i++) {
+            line[i] = (byte) Math.min(command.charAt(i), 0x7f);
+        }
+        return parser.parse(line, command.length()) ? ProtocolChannel.OK : ProtocolChannel.FORMAT_ERROR;
+    }
+
+    public void stop() {
+        // nothing to release
+    }
+}
+
+/**
+ * Byte-level pipe protocol between the visualizer and a solution process. The text mode is the
+ * original line protocol; the binary mode (solution started with -binary) sends 4-byte header
+ * fields, then per day a 2-byte count and one byte per coordinate, and reads back a 2-byte count
+ * and 3 bytes per command.
+ */
+class ProtocolChannel implements SolutionDriver {
+    public static final int OK = 0;
+    public static final int READ_ERROR = 1;
+    public static final int FORMAT_ERROR = 2;
+
+    private final Process process;
+    private final InputStream in;
+    private final OutputStream out;
+    private final boolean binary;
+
+    private final byte[] inBuf = new byte[1 << 16];
+    private int inLen, inPos;
+    private byte[] outBuf = new byte[1 << 16];
+    private int outPos;
+    private final byte[] line = new byte[16];
+    private int lineLen;
+    private int boardSize;
+
+    public ProtocolChannel(Process process, boolean binary) {
+        this.process = process;
+        this.in = process.getInputStream();
+        this.out = process.getOutputStream();
+        this.binary = binary;
+    }
+
+    public void stop() {
+        try {
+            process.destroy();
+        } catch (Exception e) {
+            // do nothing
+        }
+    }
+
+    public void init(int boardSize, int salary, int snowFine) throws IOException {
+        this.boardSize = boardSize;
+        writeValue(boardSize, 4);
+        writeValue(salary, 4);
+        writeValue(snowFine, 4);
+        flush();
+    }
+
+    public void encode(DayPacket day) {
+        // at most 5 digits and a newline for the count, 2 digits and a newline per coordinate
+        byte[] buf = new byte[6 + 6 * day.snowFalls.length];
+        int pos = putValue(buf, 0, day.snowFalls.length, 2);
+        for (int cell : day.snowFalls) {
+            pos = putValue(buf, pos, cell / boardSize, 1);
+            pos = putValue(buf, pos, cell % boardSize, 1);
+        }
+        day.input = buf;
+        day.inputLen = pos;
+    }
+
+    public int sendDay(DayPacket day) throws IOException {
+        out.write(day.input, 0, day.inputLen);
+        out.flush();
+        return readCommandCount();
+    }
+
+    private int readCommandCount() throws IOException {
+        if (binary) {
+            return (readByte() << 8) | readByte();
+        }
+        if (readLine() < 0) {
+            throw new IOException("end of stream");
+        }
+        int pos = 0;
+        boolean negative = false;
+        if (lineLen > 0 && (line[0] == '-' || line[0] == '+')) {
+            negative = line[0] == '-';
+            pos++;
+        }
+        if (pos == lineLen || lineLen - pos > 10) {
+            throw new NumberFormatException();
+        }
+        long value = 0;
+        for (; pos < lineLen; pos++) {
+            if (line[pos] < '0' || line[pos] > '9') {
+                throw new NumberFormatException();
+            }
+            value = value * 10 + (line[pos] - '0');
+        }
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException();
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /** Reads one command into the parser and returns OK, READ_ERROR or FORMAT_ERROR. */
+    public int readCommand(CommandParser parser) {
+        try {
+            if (binary) {
+                int op = readByte();
+                int a = readByte();
+                int b = readByte();
+                if (op == 'H' && a <= 99 && b <= 99) {
+                    parser.op = CommandParser.HIRE;
+                } else if (op == 'M' && a <= 99 && b < Constants.DIR_STR.length()) {
+                    parser.op = CommandParser.MOVE;
+                } else {
+                    return FORMAT_ERROR;
+                }
+                parser.a = a;
+                parser.b = b;
+                return OK;
+            }
+            if (readLine() < 0) {
+                return READ_ERROR;
+            }
+        } catch (IOException e) {
+            return READ_ERROR;
+        }
+        if (lineLen > 10 || !parser.parse(line, lineLen)) {
+            return FORMAT_ERROR;
+        }
+        return OK;
+    }
+
+    private void writeValue(int value, int width) throws IOException {
+        if (outBuf.length - outPos < 12) {
+            flushBuffer();
+        }
+        outPos = putValue(outBuf, outPos, value, width);
+    }
+
+    /** Encodes a non-negative value at buf[pos] and returns the position after it. */
+    private int putValue(byte[] buf, int pos, int value, int width) {
+        if (binary) {
+            for (int shift = 8 * (width - 1); shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (value >> shift);
+            }
+            return pos;
+        }
+        if (value == 0) {
+            buf[pos++] = '0';
+        } else {
+            int start = pos;
+            for (; value > 0; value /= 10) {
+                buf[pos++] = (byte) ('0' + value % 10);
+            }
+            for (int i = start, j = pos - 1; i < j; i++, j--) {
+                byte tmp = buf[i];
+                buf[i] = buf[j];
+                buf[j] = tmp;
+            }
+        }
+        buf[pos++] = '\n';
+        return pos;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(outBuf, 0, outPos);
+        outPos = 0;
+    }
+
+    private void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private int readByte() throws IOException {
+        if (inPos == inLen) {
+            inLen = in.read(inBuf, 0, inBuf.length);
+            inPos = 0;
+            if (inLen <= 0) {
+                inLen = 0;
+                throw new IOException("end of stream");
+            }
+        }
+        return inBuf[inPos++] & 0xff;
+    }
+
+    /** Reads a '\n' terminated line, dropping a trailing '\r'; lineLen also counts bytes past the buffer. */
+    private int readLine() throws IOException {
+        lineLen = 0;
+        int b;
+        try {
+            b = readByte();
+        } catch (IOException e) {
+            return -1;
+        }
+        while (b != '\n') {
+            if (lineLen < line.length) {
+                line[lineLen] = (byte) b;
+            }
+            lineLen++;
+            try {
+                b = readByte();
+            } catch (IOException e) {
+                break;
+            }
+        }
+        if (lineLen > 0 && lineLen <= line.length && line[lineLen - 1] == '\r') {
+            lineLen--;
+        }
+        return lineLen;
+    }
+}
+
+public class SnowCleaningVis {
+
+    public static String WRONG_COMMAND_ERROR = "ERROR: Each worker command must be formatted either \"M <ID> <DIR>\"" +
+            " or \"H <ROW> <COL>\". Here <ID>, <ROW> and <COL> are integers from 0 to 99 without leading zeros" +
+            " and <DIR> is one of 'U', 'L', 'D', 'R'.";
+
+    public static String execCommand = null;
+    public static String solutionClass = null;
+    public static long seed = 1;
+    public static boolean vis = true;
+    public static int cellSize = 12;
+    public static int delay = 100;
+    public static boolean startPaused = false;
+    public static boolean binary = false;
+    public static long firstSeed = -1, lastSeed = -1;
+    public static int threads = Runtime.getRuntime().availableProcessors();
+    public static TestCaseCorpus corpus = null;
+    public static String framesDir = null;
+    public static int frameEvery = 1;
+    public static String logFile = null;
+    public static int checkpointEvery = 100;
+    public static String solverConfig = null;
+
+    public static boolean pipelined = Runtime.getRuntime().availableProcessors() > 1;
+
+    /** Days the writer and the solution thread may run ahead of the scorer. */
+    private static final int PIPELINE_DEPTH = 4;
+
+    public static Process solution;
+
+    public SolutionDriver startSolution(String config) {
+        if (solutionClass != null) {
+            try {
+                return new InProcessSolution(solutionClass, config);
             } catch (Exception e) {
-                System.err.println("ERROR: time step = " + t + " (0-based). Unable to get the number of worker commands" +
-                        " from your solution.");
-                return -1;
+                System.err.println("ERROR: Unable to load your solution class " + solutionClass +
+                        (config != null ? " with parameters " + config : "") + ".");
+                return null;
             }
+        }
+
+        Process process;
+        try {
+            process = Runtime.getRuntime().exec(execCommand);
+        } catch (Exception e) {
+            System.err.println("ERROR: Unable to execute your solution using the provided command: "
+                    + execCommand + ".");
+            return null;
+        }
+        solution = process;
+
+        new ErrorStreamRedirector(process.getErrorStream()).start();
+        return new ProtocolChannel(process, binary);
+    }
+
+    public int runTest() {
+        World world = simulate(seed, vis);
+        if (world == null) {
+            return -1;
+        }
 
-            for (int i = 0; i < commandCnt; i++) {
-                String command;
+        System.out.println("Fine   = " + world.totFine);
+        System.out.println("Salary = " + world.totSalary);
+
+        return world.totFine + world.totSalary;
+    }
+
+    /** Plays one seed against a fresh solution; returns the final world, or null after reporting an error. */
+    public World simulate(long seed, boolean visualize) {
+        return simulate(seed, visualize, solverConfig, null);
+    }
+
+    /**
+     * Same, with the given solver parameters (null for none) and an optional trace that records the
+     * running score and may stop the run early, in which case the world is returned as of that day.
+     */
+    public World simulate(long seed, boolean visualize, String config, ScoreTrace trace) {
+        SolutionDriver driver = startSolution(config);
+        if (driver == null) {
+            return null;
+        }
+        try {
+            return play(driver, seed, visualize, trace);
+        } finally {
+            driver.stop();
+        }
+    }
+
+    /** The seed's test case, read from the snowfall corpus when one is open and holds the seed. */
+    static TestCase testCase(long seed) throws IOException {
+        return (corpus != null && corpus.contains(seed)) ? corpus.load(seed) : new TestCase(seed);
+    }
+
+    private World play(SolutionDriver driver, long seed, boolean visualize, ScoreTrace trace) {
+        TestCase tc;
+        try {
+            tc = testCase(seed);
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to read seed " + seed + " from the snowfall corpus.");
+            return null;
+        }
+
+        try {
+            driver.init(tc.boardSize, tc.salary, tc.snowFine);
+        } catch (Exception e) {
+            System.err.println("ERROR: Unable to send the test case parameters to your solution.");
+            return null;
+        }
+
+        World world = new World(tc.boardSize, tc.salary, tc.snowFine);
+        Drawer drawer = null;
+        if (visualize) {
+            drawer = new Drawer(world, cellSize);
+            if (startPaused) {
+                drawer.pauseMode = true;
+            }
+        }
+        FrameExporter frames = null;
+        if (framesDir != null) {
+            frames = new FrameExporter(world, cellSize, new File(framesDir, "seed" + seed), frameEvery);
+        }
+        RunLogWriter log = null;
+        if (logFile != null) {
+            File file = new File(firstSeed >= 0 ? logFile + "." + seed : logFile);
+            try {
+                log = new RunLogWriter(file, seed, tc.boardSize, tc.salary, tc.snowFine, checkpointEvery);
+            } catch (IOException e) {
+                System.err.println("ERROR: Unable to create the run log " + file + ".");
+                return null;
+            }
+        }
+        try {
+            return play(driver, tc, world, drawer, frames, log, visualize, trace);
+        } finally {
+            if (log != null) {
                 try {
-                    command = reader.readLine();
-                } catch (Exception e) {
-                    System.err.println("ERROR: time step = " + t + " + (0-based). Unable to read " + i + "-th (0-based)" +
-                            " worker command from your solution.");
-                    return -1;
+                    log.close();
+                } catch (IOException e) {
+                    System.err.println("ERROR: Unable to finish the run log.");
                 }
-                if (command.length() > 10) {
-                    System.err.println("ERROR: time step = " + t + ", worker command = " + i + " (0-based indices). " + WRONG_COMMAND_ERROR);
-                    return -1;
+            }
+        }
+    }
+
+    /** Runs the days, pipelined across threads when there is more than one processor. */
+    private World play(final SolutionDriver driver, final TestCase tc, World world, Drawer drawer,
+                       FrameExporter frames, RunLogWriter log, boolean visualize, ScoreTrace trace) {
+        final DayScorer scorer = new DayScorer(tc, world, drawer, frames, log, visualize, trace);
+        CommandParser parser = new CommandParser();
+        if (!pipelined) {
+            for (int t = 0; t < Constants.SIMULATION_TIME; t++) {
+                DayPacket day = new DayPacket(t, tc.getSnowFalls(t));
+                driver.encode(day);
+                readDay(driver, day, parser);
+                if (!scorer.apply(day)) {
+                    break;
                 }
-                if (command.matches(HIRE_REG_EXP)) {
-                    String[] items = command.split(" ");
-                    int row = Integer.parseInt(items[1]);
-                    int col = Integer.parseInt(items[2]);
-                    String msg = world.addWorker(row, col);
-                    if (msg.length() > 0) {
-                        System.err.println("ERROR: time step = " + t + ", worker command = " + i + " (0-based indices). " + msg);
-                        return -1;
+            }
+            return scorer.result;
+        }
+
+        final SpscQueue<DayPacket> encoded = new SpscQueue<DayPacket>(PIPELINE_DEPTH);
+        final SpscQueue<DayPacket> answered = new SpscQueue<DayPacket>(PIPELINE_DEPTH);
+        // anything the writer and the scorer threw
+        final Throwable[] failures = new Throwable[2];
+        Thread writerThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int t = 0; t < Constants.SIMULATION_TIME; t++) {
+                        DayPacket day = new DayPacket(t, tc.getSnowFalls(t));
+                        driver.encode(day);
+                        if (!encoded.put(day)) {
+                            return;
+                        }
                     }
-                } else if (command.matches(MOVE_REG_EXP)) {
-                    String[] items = command.split(" ");
-                    int id = Integer.parseInt(items[1]);
-                    int dir = Constants.DIR_STR.indexOf(items[2]);
-                    String msg = world.moveWorker(id, dir);
-                    if (msg.length() > 0 ){
-                        System.err.println("ERROR: time step = " + t + ", worker command = " + i + " (0-based indices). " + msg);
-                        return -1;
+                } catch (Throwable e) {
+                    failures[0] = e;
+                } finally {
+                    encoded.close();
+                }
+            }
+        }, "day-writer");
+        Thread scorerThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    DayPacket day;
+                    while ((day = answered.take()) != null && scorer.apply(day)) {
+                        // next day
                     }
-                } else {
-                    System.err.println("ERROR: time step = " + t + ", worker command = " + i + " (0-based indices). " + WRONG_COMMAND_ERROR);
-                    return -1;
+                } catch (Throwable e) {
+                    failures[1] = e;
+                } finally {
+                    encoded.close();
+                    answered.close();
                 }
             }
+        }, "day-scorer");
+        writerThread.setDaemon(true);
+        scorerThread.setDaemon(true);
+        writerThread.start();
+        scorerThread.start();
+
+        DayPacket day;
+        while (!answered.isClosed() && (day = encoded.take()) != null) {
+            readDay(driver, day, parser);
+            if (!answered.put(day) || !day.counted || day.status != ProtocolChannel.OK) {
+                break;
+            }
+        }
+        answered.close();
+        joinUninterruptibly(scorerThread);
+        encoded.close();
+        joinUninterruptibly(writerThread);
+
+        for (Throwable failure : failures) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+        return scorer.result;
+    }
+
+    /** Sends the day and reads its commands, recording rather than reporting any failure. */
+    private static void readDay(SolutionDriver driver, DayPacket day, CommandParser parser) {
+        try {
+            day.commandCnt = driver.sendDay(day);
+        } catch (Exception e) {
+            return;
+        }
+        day.counted = true;
+        day.commands = new byte[3 * Math.max(0, Math.min(day.commandCnt, 2 * Constants.MAX_WORKERS))];
+        while (day.readCnt < day.commandCnt) {
+            day.status = driver.readCommand(parser);
+            if (day.status != ProtocolChannel.OK) {
+                break;
+            }
+            if (3 * day.readCnt + 3 > day.commands.length) {
+                day.commands = Arrays.copyOf(day.commands, Math.max(3, 2 * day.commands.length));
+            }
+            day.commands[3 * day.readCnt] = (byte) (parser.op == CommandParser.HIRE ? 'H' : 'M');
+            day.commands[3 * day.readCnt + 1] = (byte) parser.a;
+            day.commands[3 * day.readCnt + 2] = (byte) parser.b;
+            day.readCnt++;
+        }
+    }
+
+    /** The last stage of play: applies answered days to the world, in order. */
+    private class DayScorer {
+        private final TestCase tc;
+        private final World world;
+        private final Drawer drawer;
+        private FrameExporter frames;
+        private final RunLogWriter log;
+        private final boolean visualize;
+        private final ScoreTrace trace;
+
+        /** The world once the run is over, or null after an error. */
+        World result;
+
+        DayScorer(TestCase tc, World world, Drawer drawer, FrameExporter frames, RunLogWriter log,
+                  boolean visualize, ScoreTrace trace) {
+            this.tc = tc;
+            this.world = world;
+            this.drawer = drawer;
+            this.frames = frames;
+            this.log = log;
+            this.visualize = visualize;
+            this.trace = trace;
+            result = world;
+        }
+
+        /** Applies one day; returns false if the run ends with it, after an error or an early stop. */
+        boolean apply(DayPacket day) {
+            int t = day.t;
+            world.startNewDay();
+
+            int[] snowFalls = day.snowFalls;
+            int snowFallCnt = snowFalls.length;
+
+            for (int i=0; i < snowFallCnt; i++) {
+                world.addSnow(snowFalls[i] / tc.boardSize, snowFalls[i] % tc.boardSize);
+            }
+
+            if (!day.counted) {
+                System.err.println("ERROR: time step = " + t + " (0-based). Unable to get the number of worker commands" +
+                        " from your solution.");
+                return fail();
+            }
+
+            // The day was read as a whole and is validated in one pass. A command rejected by the world has
+            // to be reported before any read error that follows it, so the prefix that was read goes first.
+            int readCnt = day.readCnt;
+            int rejected = world.applyCommands(day.commands, readCnt);
+            if (rejected >= 0) {
+                System.err.println("ERROR: time step = " + t + ", worker command = " + rejected + " (0-based indices). " + world.lastError());
+                return fail();
+            }
+            if (day.status == ProtocolChannel.READ_ERROR) {
+                System.err.println("ERROR: time step = " + t + " + (0-based). Unable to read " + readCnt + "-th (0-based)" +
+                        " worker command from your solution.");
+                return fail();
+            }
+            if (day.status == ProtocolChannel.FORMAT_ERROR) {
+                System.err.println("ERROR: time step = " + t + ", worker command = " + readCnt + " (0-based indices). " + WRONG_COMMAND_ERROR);
+                return fail();
+            }
+            if (log != null) {
+                log.addCommands(day.commands, readCnt);
+            }
 
             world.cleanAllSnow();
 
             world.updateTotalFine();
             world.updateTotalSalary();
 
-            if (vis) {
+            if (trace != null && !trace.record(t, (long) world.totFine + world.totSalary)) {
+                return false;
+            }
+
+            if (log != null) {
+                try {
+                    log.endDay(world, snowFalls);
+                } catch (IOException e) {
+                    System.err.println("ERROR: Unable to write to the run log.");
+                    return fail();
+                }
+            }
+
+            if (frames != null) {
+                try {
+                    frames.onDayEnd();
+                } catch (IOException e) {
+                    System.err.println("ERROR: Unable to write a frame to " + framesDir + ".");
+                    frames = null;
+                }
+            }
+
+            if (visualize) {
+                world.publishSnapshot();
                 drawer.processPause();
                 drawer.repaint();
                 try {
@@ -521,14 +1811,44 @@ public class SnowCleaningVis {
                     // do nothing
                 }
             }
+            return true;
         }
 
-        stopSolution();
+        private boolean fail() {
+            result = null;
+            return false;
+        }
+    }
 
-        System.out.println("Fine   = " + world.totFine);
-        System.out.println("Salary = " + world.totSalary);
+    private static void joinUninterruptibly(Thread thread) {
+        while (true) {
+            try {
+                thread.join();
+                return;
+            } catch (InterruptedException e) {
+                // keep waiting; the pipeline threads always finish once the queues are closed
+            }
+        }
+    }
 
-        return world.totFine + world.totSalary;
+    /** Prints the state at the end of a logged day, and writes its frame when -frames is given. */
+    public static void replay(String file, int day) {
+        try {
+            RunLogReader reader = new RunLogReader(new File(file));
+            World world = reader.worldAt(day);
+            reader.close();
+            System.out.println("Seed   = " + reader.seed);
+            System.out.println("Day    = " + world.curDay);
+            System.out.println("Snow   = " + world.snowCnt);
+            System.out.println("Workers = " + world.workerCnt);
+            System.out.println("Fine   = " + world.totFine);
+            System.out.println("Salary = " + world.totSalary);
+            if (framesDir != null) {
+                new FrameExporter(world, cellSize, new File(framesDir, "seed" + reader.seed), 1).onDayEnd();
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to replay the run log " + file + ".");
+        }
     }
 
     public static void stopSolution() {
@@ -542,11 +1862,42 @@ public class SnowCleaningVis {
     }
 
     public static void main(String[] args) {
+        String corpusFile = null, writeCorpusFile = null;
+        String replayFile = null;
+        String[] diffFiles = null;
+        String tuneSpace = null;
+        int replayDay = Constants.SIMULATION_TIME - 1;
         for (int i = 0; i < args.length; i++)
             if (args[i].equals("-exec")) {
                 execCommand = args[++i];
+            } else if (args[i].equals("-class")) {
+                solutionClass = args[++i];
             } else if (args[i].equals("-seed")) {
                 seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-seeds")) {
+                String[] range = args[++i].split("-");
+                firstSeed = Long.parseLong(range[0]);
+                lastSeed = Long.parseLong(range[range.length - 1]);
+            } else if (args[i].equals("-corpus")) {
+                corpusFile = args[++i];
+            } else if (args[i].equals("-writeCorpus")) {
+                writeCorpusFile = args[++i];
+            } else if (args[i].equals("-frames")) {
+                framesDir = args[++i];
+            } else if (args[i].equals("-frameEvery")) {
+                frameEvery = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-log")) {
+                logFile = args[++i];
+            } else if (args[i].equals("-checkpointEvery")) {
+                checkpointEvery = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-replay")) {
+                replayFile = args[++i];
+            } else if (args[i].equals("-day")) {
+                replayDay = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-diff")) {
+                diffFiles = new String[]{args[++i], args[++i]};
+            } else if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
             } else if (args[i].equals("-novis")) {
                 vis = false;
             } else if (args[i].equals("-sz")) {
@@ -555,17 +1906,87 @@ public class SnowCleaningVis {
                 delay = Integer.parseInt(args[++i]);
             } else if (args[i].equals("-pause")) {
                 startPaused = true;
+            } else if (args[i].equals("-binary")) {
+                binary = true;
+            } else if (args[i].equals("-serial")) {
+                pipelined = false;
+            } else if (args[i].equals("-config")) {
+                solverConfig = args[++i];
+            } else if (args[i].equals("-tune")) {
+                tuneSpace = args[++i];
             } else {
                 System.out.println("WARNING: unknown argument " + args[i] + ".");
             }
 
-        if (execCommand == null) {
+        if (diffFiles != null) {
+            try {
+                RunLogReader.diff(new File(diffFiles[0]), new File(diffFiles[1]));
+            } catch (IOException e) {
+                System.err.println("ERROR: Unable to read the run logs.");
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (replayFile != null) {
+            replay(replayFile, replayDay);
+            return;
+        }
+
+        if (writeCorpusFile != null) {
+            if (firstSeed < 0) {
+                firstSeed = lastSeed = seed;
+            }
+            try {
+                TestCaseCorpus.write(new File(writeCorpusFile), firstSeed, lastSeed);
+            } catch (IllegalArgumentException e) {
+                System.err.println("ERROR: " + e.getMessage());
+                System.exit(1);
+            } catch (IOException e) {
+                System.err.println("ERROR: Unable to write the snowfall corpus " + writeCorpusFile + ".");
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (corpusFile != null) {
+            try {
+                corpus = new TestCaseCorpus(new File(corpusFile));
+            } catch (IOException e) {
+                System.err.println("ERROR: Unable to open the snowfall corpus " + corpusFile + ".");
+                System.exit(1);
+            }
+        }
+
+        if (execCommand == null && solutionClass == null) {
             System.err.println("ERROR: You did not provide the command to execute your solution." +
-                    " Please use -exec <command> for this.");
+                    " Please use -exec <command> for this, or -class <name> to run it in-process.");
+            System.exit(1);
+        }
+
+        if ((solverConfig != null || tuneSpace != null) && solutionClass == null) {
+            System.err.println("ERROR: Solver parameters can only be passed to a solution run with -class <name>.");
             System.exit(1);
         }
 
         SnowCleaningVis vis = new SnowCleaningVis();
+        if (tuneSpace != null) {
+            if (firstSeed < 0) {
+                System.err.println("ERROR: Tuning needs a range of seeds, given with -seeds <first>-<last>.");
+                System.exit(1);
+            }
+            try {
+                new ConfigTuner(vis, tuneSpace, firstSeed, lastSeed, threads).run();
+            } catch (IllegalArgumentException e) {
+                System.err.println("ERROR: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (firstSeed >= 0) {
+            new BatchScorer(vis, firstSeed, lastSeed, threads).run();
+            return;
+        }
         try {
             int score = vis.runTest();
             System.out.println("Score  = " + score);
@@ -577,6 +1998,334 @@ public class SnowCleaningVis {
     }
 }
 
+/**
+ * Scores a range of seeds on a work-stealing pool, each seed with its own TestCase, World and
+ * solution instance, and prints per-seed results followed by aggregate statistics.
+ */
+class BatchScorer {
+    private final SnowCleaningVis runner;
+    private final long firstSeed, lastSeed;
+    private final int threads;
+
+    public BatchScorer(SnowCleaningVis runner, long firstSeed, long lastSeed, int threads) {
+        this.runner = runner;
+        this.firstSeed = firstSeed;
+        this.lastSeed = lastSeed;
+        this.threads = threads;
+    }
+
+    public void run() {
+        final int n = (int) (lastSeed - firstSeed + 1);
+        final long[] scores = new long[n];
+        final long[] nanos = new long[n];
+        long startTime = System.nanoTime();
+
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        List<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int i = 0; i < n; i++) {
+            final int idx = i;
+            tasks.add(pool.submit(new Runnable() {
+                public void run() {
+                    long start = System.nanoTime();
+                    World world = null;
+                    try {
+                        world = runner.simulate(firstSeed + idx, false);
+                    } catch (RuntimeException e) {
+                        System.err.println("ERROR: Unexpected error while running seed " + (firstSeed + idx) + ".");
+                        e.printStackTrace();
+                    }
+                    nanos[idx] = System.nanoTime() - start;
+                    scores[idx] = (world == null ? -1 : (long) world.totFine + world.totSalary);
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (Exception e) {
+                // reported by the task itself
+            }
+        }
+        pool.shutdown();
+        long totalTime = System.nanoTime() - startTime;
+
+        long[] valid = new long[n];
+        int cnt = 0;
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            System.out.println("Seed = " + (firstSeed + i) + ", Score = " + scores[i] + ", Time = " + nanos[i] / 1000000 + " ms");
+            if (scores[i] >= 0) {
+                valid[cnt++] = scores[i];
+                sum += scores[i];
+            }
+        }
+        System.out.println("Seeds  = " + n + " (" + (n - cnt) + " failed)");
+        if (cnt > 0) {
+            Arrays.sort(valid, 0, cnt);
+            System.out.println("Total  = " + sum);
+            System.out.println("Mean   = " + sum / cnt);
+            System.out.println("Median = " + percentile(valid, cnt, 50));
+            System.out.println("P90    = " + percentile(valid, cnt, 90));
+            System.out.println("P99    = " + percentile(valid, cnt, 99));
+            System.out.println("Min    = " + valid[0]);
+            System.out.println("Max    = " + valid[cnt - 1]);
+        }
+        System.out.println("Time   = " + totalTime / 1000000 + " ms on " + threads + " threads");
+    }
+
+    /** Nearest-rank percentile of the first cnt sorted values. */
+    private static long percentile(long[] sorted, int cnt, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * cnt);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
+
+/**
+ * Running score of one run, day by day. With a ceiling, the run is stopped on the first day its score
+ * is above it.
+ */
+class ScoreTrace {
+    final long[] score = new long[Constants.SIMULATION_TIME];
+    final long[] ceiling;
+    int days;
+
+    public ScoreTrace(long[] ceiling) {
+        this.ceiling = ceiling;
+    }
+
+    /** Records the score at the end of day t; returns false if the run should stop there. */
+    public boolean record(int t, long total) {
+        score[t] = total;
+        days = t + 1;
+        return ceiling == null || total <= ceiling[t];
+    }
+
+    public boolean finished() {
+        return days == Constants.SIMULATION_TIME;
+    }
+
+    /** The final score, or for a stopped run its score so far scaled to the whole simulation. */
+    public long estimate() {
+        return finished() ? score[days - 1] : score[days - 1] * Constants.SIMULATION_TIME / days;
+    }
+}
+
+/** Tunes solver parameters per bucket of seeds by successive halving over "name=lo:hi,..." ranges. */
+class ConfigTuner {
+    private static final int CANDIDATES = 16;
+    private static final int FIRST_SEEDS = 2;
+    private static final int WARMUP_DAYS = 250;
+    private static final double GIVE_UP = 1.5;
+
+    private final SnowCleaningVis runner;
+    private final String[] names;
+    private final double[] lo, hi;
+    private final boolean[] integer;
+    private final long firstSeed, lastSeed;
+    private final int threads;
+    private final Random rnd;
+
+    // Best finished trace per seed, for the early-stop ceiling.
+    private final Map<Long, long[]> best = new HashMap<Long, long[]>();
+
+    public ConfigTuner(SnowCleaningVis runner, String space, long firstSeed, long lastSeed, int threads) {
+        this.runner = runner;
+        String[] params = space.split(",");
+        names = new String[params.length];
+        lo = new double[params.length];
+        hi = new double[params.length];
+        integer = new boolean[params.length];
+        for (int i = 0; i < params.length; i++) {
+            String[] nameRange = params[i].split("=");
+            String[] range = nameRange.length == 2 ? nameRange[1].split(":") : new String[0];
+            if (range.length != 2) {
+                throw new IllegalArgumentException("Tuning parameters must be given as name=lo:hi, not " + params[i] + ".");
+            }
+            names[i] = nameRange[0];
+            lo[i] = Double.parseDouble(range[0]);
+            hi[i] = Double.parseDouble(range[1]);
+            integer[i] = !range[0].contains(".") && !range[1].contains(".");
+        }
+        this.firstSeed = firstSeed;
+        this.lastSeed = lastSeed;
+        this.threads = threads;
+        rnd = new Random(firstSeed * 31 + lastSeed);
+    }
+
+    public void run() {
+        Method bucketMethod = null;
+        try {
+            bucketMethod = Class.forName(SnowCleaningVis.solutionClass)
+                    .getDeclaredMethod("bucket", int.class, int.class, int.class);
+            bucketMethod.setAccessible(true);
+        } catch (Exception e) {
+            // a single bucket
+        }
+        TreeMap<Integer, List<Long>> buckets = new TreeMap<Integer, List<Long>>();
+        for (long seed = firstSeed; seed <= lastSeed; seed++) {
+            int bucket = 0;
+            if (bucketMethod != null) {
+                try {
+                    TestCase tc = SnowCleaningVis.testCase(seed);
+                    bucket = (Integer) bucketMethod.invoke(null, tc.boardSize, tc.salary, tc.snowFine);
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("Unable to get the bucket of seed " + seed + ".");
+                }
+            }
+            if (!buckets.containsKey(bucket)) {
+                buckets.put(bucket, new ArrayList<Long>());
+            }
+            buckets.get(bucket).add(seed);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Map.Entry<Integer, List<Long>> bucket : buckets.entrySet()) {
+                tune(pool, bucket.getKey(), bucket.getValue());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void tune(ExecutorService pool, int bucket, List<Long> seeds) {
+        List<String> candidates = new ArrayList<String>();
+        candidates.add(null);
+        for (int i = 1; i < CANDIDATES; i++) {
+            candidates.add(sample());
+        }
+        // log-scores per candidate and seed, so seeds with large scores do not drown out the rest
+        Map<String, Map<Long, Double>> scores = new HashMap<String, Map<Long, Double>>();
+        for (String candidate : candidates) {
+            scores.put(key(candidate), new HashMap<Long, Double>());
+        }
+
+        int seedCnt = Math.min(FIRST_SEEDS, seeds.size());
+        int round = 0;
+        int runs = 0, stopped = 0;
+        while (true) {
+            List<Long> roundSeeds = seeds.subList(0, seedCnt);
+            int[] counts = evaluate(pool, candidates, roundSeeds, scores);
+            runs += counts[0];
+            stopped += counts[1];
+            round++;
+            final Map<String, Double> mean = new HashMap<String, Double>();
+            for (String candidate : candidates) {
+                double sum = 0;
+                for (long seed : roundSeeds) {
+                    sum += scores.get(key(candidate)).get(seed);
+                }
+                mean.put(key(candidate), sum / roundSeeds.size());
+            }
+            List<String> ranked = new ArrayList<String>(candidates.subList(1, candidates.size()));
+            Collections.sort(ranked, new Comparator<String>() {
+                public int compare(String a, String b) {
+                    return Double.compare(mean.get(key(a)), mean.get(key(b)));
+                }
+            });
+            if (ranked.size() <= 1 || seedCnt == seeds.size()) {
+                String winner = ranked.isEmpty() ? null : ranked.get(0);
+                double gain = winner == null ? 0 : mean.get(key(null)) - mean.get(key(winner));
+                System.out.println("Bucket " + bucket + ": " + seeds.size() + " seeds, " + round + " rounds, " + runs
+                        + " runs (" + stopped + " stopped early)");
+                if (gain > 0) {
+                    System.out.printf("    %s  (%.2f%% below the solution's own parameters on %d seeds)%n",
+                            winner, 100 * (1 - Math.exp(-gain)), seedCnt);
+                } else {
+                    System.out.println("    no overrides beat the solution's own parameters");
+                }
+                return;
+            }
+            candidates = new ArrayList<String>();
+            candidates.add(null);
+            candidates.addAll(ranked.subList(0, (ranked.size() + 1) / 2));
+            seedCnt = Math.min(2 * seedCnt, seeds.size());
+        }
+    }
+
+    /** Scores every candidate on the seeds it has no score for yet; returns {runs, stopped early}. */
+    private int[] evaluate(ExecutorService pool, List<String> candidates, List<Long> seeds,
+                           Map<String, Map<Long, Double>> scores) {
+        // The reference goes first, so the others already have a ceiling to be stopped by.
+        int[] counts = new int[2];
+        for (int pass = 0; pass < 2; pass++) {
+            List<Future<ScoreTrace>> tasks = new ArrayList<Future<ScoreTrace>>();
+            List<String> taskCandidates = new ArrayList<String>();
+            List<Long> taskSeeds = new ArrayList<Long>();
+            for (String candidate : pass == 0 ? candidates.subList(0, 1) : candidates.subList(1, candidates.size())) {
+                for (final long seed : seeds) {
+                    if (scores.get(key(candidate)).containsKey(seed)) {
+                        continue;
+                    }
+                    final String config = candidate;
+                    final long[] ceiling = ceiling(seed);
+                    tasks.add(pool.submit(new Callable<ScoreTrace>() {
+                        public ScoreTrace call() {
+                            ScoreTrace trace = new ScoreTrace(ceiling);
+                            World world = runner.simulate(seed, false, config, trace);
+                            return world == null ? null : trace;
+                        }
+                    }));
+                    taskCandidates.add(candidate);
+                    taskSeeds.add(seed);
+                }
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                ScoreTrace trace;
+                try {
+                    trace = tasks.get(i).get();
+                } catch (Exception e) {
+                    trace = null;
+                }
+                if (trace == null) {
+                    throw new IllegalArgumentException("Seed " + taskSeeds.get(i) + " failed with parameters "
+                            + key(taskCandidates.get(i)) + ".");
+                }
+                scores.get(key(taskCandidates.get(i))).put(taskSeeds.get(i), Math.log(Math.max(1, trace.estimate())));
+                counts[0]++;
+                if (trace.finished()) {
+                    long[] b = best.get(taskSeeds.get(i));
+                    if (b == null || trace.score[trace.days - 1] < b[b.length - 1]) {
+                        best.put(taskSeeds.get(i), trace.score.clone());
+                    }
+                } else {
+                    counts[1]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private long[] ceiling(long seed) {
+        long[] b = best.get(seed);
+        if (b == null) {
+            return null;
+        }
+        long[] ceiling = new long[b.length];
+        for (int t = 0; t < b.length; t++) {
+            ceiling[t] = t < WARMUP_DAYS ? Long.MAX_VALUE : (long) (GIVE_UP * b[t]);
+        }
+        return ceiling;
+    }
+
+    private String sample() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            sb.append(i > 0 ? "," : "").append(names[i]).append('=');
+            if (integer[i]) {
+                sb.append((long) lo[i] + rnd.nextInt((int) (hi[i] - lo[i]) + 1));
+            } else {
+                sb.append(String.format(Locale.ROOT, "%.3f", lo[i] + rnd.nextDouble() * (hi[i] - lo[i])));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String key(String candidate) {
+        return candidate == null ? "" : candidate;
+    }
+}
+
 class ErrorStreamRedirector extends Thread {
     public BufferedReader reader;
 
@@ -0,0 +1,130 @@
+package snowcleaning.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The planner's hot paths on a synthetic mid-run board: 100 workers and a few hundred open snow
+ * cells at random positions. nearestIdleWorker and the per-cell loop of processSnowCell were
+ * replaced by WorkerIndex.nearest and the AssignmentEngine, so those are what is measured here,
+ * including the territory engine the solver ships with and its per-move territory update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlannerBenchmark {
+    @Param({"20", "50"})
+    public int boardSize;
+
+    private Object index;
+    private Object greedy;
+    private Object auction;
+    private Object territories;
+    private Object territory;
+    private int[] workerRow, workerCol;
+    private int[] cells;
+    private int[] assigned;
+    private int query;
+    private int mover;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Random rnd = new Random(1);
+        index = (Object) Solver.NEW_WORKER_INDEX.invokeExact(boardSize, Solver.BUCKET_SIZE, Solver.MAX_WORKERS);
+        greedy = (Object) Solver.NEW_GREEDY.invokeExact(index, boardSize, Solver.BOUNDS);
+        auction = (Object) Solver.NEW_AUCTION.invokeExact(index, boardSize, Solver.BOUNDS, Solver.CANDIDATES,
+                Solver.MAX_WORKERS);
+        workerRow = new int[Solver.MAX_WORKERS];
+        workerCol = new int[Solver.MAX_WORKERS];
+        boolean[] taken = new boolean[boardSize * boardSize];
+        for (int id = 0; id < Solver.MAX_WORKERS; id++) {
+            workerRow[id] = rnd.nextInt(boardSize);
+            workerCol[id] = rnd.nextInt(boardSize);
+            taken[workerRow[id] * boardSize + workerCol[id]] = true;
+        }
+        cells = new int[boardSize * boardSize / 8];
+        for (int k = 0; k < cells.length; k++) {
+            int cell;
+            do {
+                cell = rnd.nextInt(boardSize * boardSize);
+            } while (taken[cell]);
+            taken[cell] = true;
+            cells[k] = cell;
+        }
+        assigned = new int[cells.length];
+        territories = (Object) Solver.NEW_TERRITORIES.invokeExact(boardSize, Solver.MAX_WORKERS);
+        for (int id = 0; id < Solver.MAX_WORKERS; id++) {
+            Solver.TERRITORIES_PLACE.invokeExact(territories, id, workerRow[id], workerCol[id]);
+        }
+        Object fallback = (Object) Solver.NEW_AUCTION.invokeExact(index, boardSize, Solver.BOUNDS,
+                Solver.CANDIDATES, Solver.MAX_WORKERS);
+        territory = (Object) Solver.NEW_TERRITORY.invokeExact(index, territories, fallback, boardSize,
+                Solver.MAX_WORKERS);
+        resetIndex();
+    }
+
+    private void resetIndex() throws Throwable {
+        for (int id = 0; id < Solver.MAX_WORKERS; id++) {
+            Solver.INDEX_ADD.invokeExact(index, id, workerRow[id], workerCol[id]);
+        }
+    }
+
+    @Benchmark
+    public int nearestIdleWorker() throws Throwable {
+        int cell = cells[query++ % cells.length];
+        return (int) Solver.INDEX_NEAREST.invokeExact(index, cell / boardSize, cell % boardSize, Solver.BOUNDS);
+    }
+
+    /** One day's greedy assignment of every open cell; includes re-indexing the 100 workers. */
+    @Benchmark
+    public int[] greedyAssignment() throws Throwable {
+        resetIndex();
+        Solver.GREEDY_ASSIGN.invokeExact(greedy, cells, cells.length, assigned);
+        return assigned;
+    }
+
+    /** One day's auction assignment of every open cell; includes re-indexing the 100 workers. */
+    @Benchmark
+    public int[] auctionAssignment() throws Throwable {
+        resetIndex();
+        Solver.ASSIGN.invokeExact(auction, cells, cells.length, assigned);
+        return assigned;
+    }
+
+    /** One day's territory assignment (the default engine) of every open cell; includes re-indexing. */
+    @Benchmark
+    public int[] territoryAssignment() throws Throwable {
+        resetIndex();
+        Solver.TERRITORY_ASSIGN.invokeExact(territory, cells, cells.length, assigned);
+        return assigned;
+    }
+
+    /** One worker stepping to a neighbouring cell and the territories following it; steps alternate. */
+    @Benchmark
+    public void territoryMove() throws Throwable {
+        int id = mover % Solver.MAX_WORKERS;
+        int step = (mover++ / Solver.MAX_WORKERS) % 2 == 0 ? 1 : -1;
+        int col = workerCol[id] + step;
+        if (col < 0 || col >= boardSize) {
+            col = workerCol[id] - step;
+        }
+        Solver.TERRITORIES_MOVE.invokeExact(territories, id, workerRow[id], col);
+        workerCol[id] = col;
+    }
+}
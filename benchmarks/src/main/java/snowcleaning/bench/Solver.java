@@ -0,0 +1,154 @@
+package snowcleaning.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Handles onto the solution and visualizer classes. They live in the default package and are
+ * package-private, which JMH benchmarks cannot name, so everything goes through method handles.
+ */
+final class Solver {
+    static final int SIMULATION_TIME = 2000;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    static final MethodHandle NEW_SOLVER = constructor("SnowCleaning");
+    static final MethodHandle INIT = method("SnowCleaning", "init", int.class, int.class, int.class, int.class);
+    static final MethodHandle CONFIGURE = method("SnowCleaning", "configure", void.class, String.class);
+    static final MethodHandle NEXT_DAY = method("SnowCleaning", "nextDay", String[].class, int[].class);
+    static final MethodHandle PLAN = method("SnowCleaning", "plan", Object.class, int[].class);
+
+    static final MethodHandle NEW_TEST_CASE = constructor("TestCase", long.class);
+    static final MethodHandle SNOW_FALLS = method("TestCase", "getSnowFalls", int[].class, int.class);
+
+    static final MethodHandle NEW_WORKER_INDEX = constructor("WorkerIndex", int.class, int.class, int.class);
+    static final MethodHandle INDEX_ADD = method("WorkerIndex", "add", void.class, int.class, int.class, int.class);
+    static final MethodHandle INDEX_NEAREST = method("WorkerIndex", "nearest", int.class, int.class, int.class, int.class);
+
+    static final MethodHandle NEW_GREEDY = constructor("GreedyAssignment", type("WorkerIndex"), int.class, int.class);
+    static final MethodHandle NEW_AUCTION = constructor("AuctionAssignment",
+            type("WorkerIndex"), int.class, int.class, int.class, int.class);
+    static final MethodHandle ASSIGN = method("AuctionAssignment", "assign", void.class,
+            int[].class, int.class, int[].class);
+    static final MethodHandle GREEDY_ASSIGN = method("GreedyAssignment", "assign", void.class,
+            int[].class, int.class, int[].class);
+
+    static final MethodHandle NEW_TERRITORIES = constructor("Territories", int.class, int.class);
+    static final MethodHandle TERRITORIES_PLACE = method("Territories", "place", void.class,
+            int.class, int.class, int.class);
+    static final MethodHandle TERRITORIES_MOVE = method("Territories", "move", void.class,
+            int.class, int.class, int.class);
+    static final MethodHandle NEW_TERRITORY = constructor("TerritoryAssignment",
+            type("WorkerIndex"), type("Territories"), type("AssignmentEngine"), int.class, int.class);
+    static final MethodHandle TERRITORY_ASSIGN = method("TerritoryAssignment", "assign", void.class,
+            int[].class, int.class, int[].class);
+
+    static final MethodHandle NEW_CONFIG = constructor("SolverConfig", String.class);
+    static final MethodHandle CONFIG_INT = method("SolverConfig", "intValue", int.class, int.class);
+
+    static final int BOUNDS = configDefault("BOUNDS");
+    static final int BUCKET_SIZE = intConstant("Fixed", "BUCKET_SIZE");
+    static final int CANDIDATES = configDefault("CANDIDATES");
+    static final int MAX_WORKERS = intConstant("Fixed", "MAX_WORKERS");
+
+    private Solver() {
+    }
+
+    /** A generated test case with each day's input already in the solver's (row, col) layout. */
+    static final class Input {
+        final int boardSize, salary, snowFine;
+        final int[][] days = new int[SIMULATION_TIME][];
+
+        Input(long seed) throws Throwable {
+            Object tc = NEW_TEST_CASE.invoke(seed);
+            boardSize = intField(tc, "boardSize");
+            salary = intField(tc, "salary");
+            snowFine = intField(tc, "snowFine");
+            for (int t = 0; t < SIMULATION_TIME; t++) {
+                int[] cells = (int[]) SNOW_FALLS.invoke(tc, t);
+                days[t] = new int[2 * cells.length];
+                for (int i = 0; i < cells.length; i++) {
+                    days[t][2 * i] = cells[i] / boardSize;
+                    days[t][2 * i + 1] = cells[i] % boardSize;
+                }
+            }
+        }
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle constructor(String cls, Class<?>... params) {
+        try {
+            Constructor<?> c = type(cls).getDeclaredConstructor(params);
+            open(c);
+            return LOOKUP.unreflectConstructor(c).asType(MethodType.methodType(Object.class, erase(params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle method(String cls, String name, Class<?> ret, Class<?>... params) {
+        try {
+            Method m = type(cls).getDeclaredMethod(name, params);
+            open(m);
+            Class<?>[] withReceiver = new Class<?>[params.length + 1];
+            withReceiver[0] = Object.class;
+            System.arraycopy(erase(params), 0, withReceiver, 1, params.length);
+            return LOOKUP.unreflect(m).asType(MethodType.methodType(ret, withReceiver));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int intConstant(String cls, String name) {
+        try {
+            Field f = type(cls).getDeclaredField(name);
+            open(f);
+            return f.getInt(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A tunable's default, as used when no per-bucket setting overrides it. */
+    private static int configDefault(String param) {
+        try {
+            Object config = (Object) NEW_CONFIG.invokeExact((Object) "");
+            return (int) CONFIG_INT.invokeExact(config, intConstant("SolverConfig", param));
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int intField(Object target, String name) throws ReflectiveOperationException {
+        Field f = target.getClass().getField(name);
+        open(f);
+        return f.getInt(target);
+    }
+
+    private static void open(AccessibleObject member) {
+        member.setAccessible(true);
+    }
+
+    /** Package-private parameter types are passed as Object so callers can use invokeExact. */
+    private static Class<?>[] erase(Class<?>[] params) {
+        Class<?>[] res = params.clone();
+        for (int i = 0; i < res.length; i++) {
+            if (!res[i].isPrimitive() && !res[i].isArray()) {
+                res[i] = Object.class;
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,67 @@
+package snowcleaning.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A full 2000-day run of the solver, reported per day. Seed 34 has the smallest board (20) and
+ * seed 77 the largest (50); both have fines above the salary, so the solver actually hires.
+ * regionSplits 2 plans the board as four regions in parallel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+    @Param({"34", "77"})
+    public long seed;
+
+    @Param({"1", "2"})
+    public int regionSplits;
+
+    private Solver.Input input;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        input = new Solver.Input(seed);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Solver.SIMULATION_TIME)
+    public void nextDay(Blackhole bh) throws Throwable {
+        Object solver = (Object) Solver.NEW_SOLVER.invokeExact();
+        Solver.CONFIGURE.invokeExact(solver, (Object) ("regionSplits=" + regionSplits));
+        bh.consume((int) Solver.INIT.invokeExact(solver, input.boardSize, input.salary, input.snowFine));
+        for (int t = 0; t < Solver.SIMULATION_TIME; t++) {
+            bh.consume((String[]) Solver.NEXT_DAY.invokeExact(solver, input.days[t]));
+        }
+    }
+
+    /** Same run through the buffered path main uses, without rendering Strings. */
+    @Benchmark
+    @OperationsPerInvocation(Solver.SIMULATION_TIME)
+    public void plan(Blackhole bh) throws Throwable {
+        Object solver = (Object) Solver.NEW_SOLVER.invokeExact();
+        Solver.CONFIGURE.invokeExact(solver, (Object) ("regionSplits=" + regionSplits));
+        bh.consume((int) Solver.INIT.invokeExact(solver, input.boardSize, input.salary, input.snowFine));
+        for (int t = 0; t < Solver.SIMULATION_TIME; t++) {
+            bh.consume((Object) Solver.PLAN.invokeExact(solver, input.days[t]));
+        }
+    }
+}